@@ -0,0 +1,212 @@
+import java.util.List;
+
+// Syntax tree produced by Parser. A Program is built once and can be executed any number of times.
+final class Ast {
+    private Ast() {}
+
+    // Static types, filled in by TypeChecker
+    enum Type { INT, LONG, DOUBLE, BOOLEAN, CHAR, STRING, OBJECT, INT_ARRAY, DOUBLE_ARRAY, VOID }
+
+    static final class Program {
+        final List<Stmt> statements;
+        // Frame layout, filled in by TypeChecker
+        int intSlots, doubleSlots, booleanSlots, objectSlots;
+        // Statements with syntax or type errors, filled in by TypeChecker
+        int errors;
+        // Compiled by Interpreter on first run and reused afterwards
+        volatile Interpreter.Instruction[] code;
+        // Generated on the first run with the bytecode backend; scripts keep no state, so runs share it
+        volatile BytecodeCompiler.Script script;
+        // Set on a program compiled for profiling, whose code records into it; such programs are interpreted
+        Profile profile;
+
+        Program(List<Stmt> statements) {
+            this.statements = statements;
+        }
+    }
+
+    // Statements
+    abstract static class Stmt {
+        String error; // set by TypeChecker; reported when the statement runs
+        int line; // where the statement starts, set by Parser; 0 for statements the compiler made up
+    }
+
+    static final class VarDecl extends Stmt {
+        final String type;
+        final String name;
+        final Expr init;
+        int slot;
+
+        VarDecl(String type, String name, Expr init) {
+            this.type = type;
+            this.name = name;
+            this.init = init;
+        }
+    }
+
+    static final class Assign extends Stmt {
+        final String name;
+        final Expr value;
+        final boolean compound; // rewritten from x += v and the like, which narrow to x's type as in Java
+        Type type;
+        int slot;
+
+        Assign(String name, Expr value) {
+            this(name, value, false);
+        }
+
+        Assign(String name, Expr value, boolean compound) {
+            this.name = name;
+            this.value = value;
+            this.compound = compound;
+        }
+    }
+
+    static final class Print extends Stmt {
+        final Expr value;
+
+        Print(Expr value) {
+            this.value = value;
+        }
+    }
+
+    static final class ExprStmt extends Stmt {
+        final Expr expr;
+
+        ExprStmt(Expr expr) {
+            this.expr = expr;
+        }
+    }
+
+    static final class Block extends Stmt {
+        final List<Stmt> statements;
+
+        Block(List<Stmt> statements) {
+            this.statements = statements;
+        }
+    }
+
+    static final class If extends Stmt {
+        final Expr condition;
+        final Stmt then;
+        final Stmt otherwise; // null without an else branch
+
+        If(Expr condition, Stmt then, Stmt otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+    }
+
+    static final class While extends Stmt {
+        final Expr condition;
+        final Stmt body;
+
+        While(Expr condition, Stmt body) {
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+
+    // A function declared at the top level. Its variables live in a frame of their own, laid out by
+    // TypeChecker like the program's; parameters are stored in their slots when it is called.
+    static final class FunctionDecl extends Stmt {
+        final String returnType; // a declared type or "void"
+        final String name;
+        final List<Parameter> parameters;
+        final Block body;
+        // Frame layout, filled in by TypeChecker
+        int intSlots, doubleSlots, booleanSlots, objectSlots;
+
+        FunctionDecl(String returnType, String name, List<Parameter> parameters, Block body) {
+            this.returnType = returnType;
+            this.name = name;
+            this.parameters = parameters;
+            this.body = body;
+        }
+    }
+
+    static final class Parameter {
+        final String type;
+        final String name;
+        int slot;
+
+        Parameter(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+    }
+
+    static final class Return extends Stmt {
+        final Expr value; // null for a plain return
+        Type type; // the function's return type
+
+        Return(Expr value) {
+            this.value = value;
+        }
+    }
+
+    // A statement the parser could not understand; reported when the program runs
+    static final class Invalid extends Stmt {
+        final String message;
+
+        Invalid(String message) {
+            this.message = message;
+        }
+    }
+
+    // Expressions
+    abstract static class Expr {
+        Type type;
+    }
+
+    static final class Literal extends Expr {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+    }
+
+    static final class Variable extends Expr {
+        final String name;
+        int slot;
+
+        Variable(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class Unary extends Expr {
+        final String op;
+        final Expr operand;
+
+        Unary(String op, Expr operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+    }
+
+    static final class Binary extends Expr {
+        final String op;
+        final Expr left;
+        final Expr right;
+
+        Binary(String op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Call extends Expr {
+        final String name;
+        final List<Expr> args;
+        FunctionRegistry.Function function; // call-site cache of the resolved builtin; null for a user function
+
+        Call(String name, List<Expr> args) {
+            this.name = name;
+            this.args = args;
+        }
+    }
+}
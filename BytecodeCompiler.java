@@ -0,0 +1,699 @@
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Optional backend that turns a type-checked Ast.Program into a JVM class. Variables become typed
+// locals of a single run() method and builtins are called with invokestatic, so the JIT sees plain code.
+// Each function the program declares becomes a method of its own, which the JIT can inline as it would
+// any small Java method.
+public class BytecodeCompiler {
+    public interface Script {
+        // Appends the program's output and returns the number of runtime errors reported in it. The
+        // monitor, if not null, is called at every loop back edge.
+        int run(StringBuilder output, ExecutionMonitor monitor);
+
+        default int run(StringBuilder output) {
+            return run(output, null);
+        }
+
+        default String run() {
+            StringBuilder output = new StringBuilder();
+            run(output);
+            return output.toString().trim();
+        }
+    }
+
+    private static final String CLASS_NAME = "CompiledScript";
+    private static final String BUILDER = "java/lang/StringBuilder";
+    private static final String SELF = "BytecodeCompiler";
+    private static final int MONITOR = 2, ERRORS = 3;
+
+    private ClassWriter.Code code;
+    // First JVM local of each Frame array; 0 = this, 1 = output builder, 2 = monitor, then 3 = error
+    // count in run() and the parameters in a function's method
+    private int intBase, doubleBase, booleanBase, objectBase;
+    // String locals that s = s + x appends to; they may hold a GrowingString, which reads flatten
+    private boolean[] growing;
+    private final Map<String, Ast.FunctionDecl> functions = new HashMap<>();
+    private boolean inFunction; // errors in a function's method go to the statement that called it
+
+    // Expects a program checked by TypeChecker. Throws UnsupportedOperationException when the
+    // program cannot be compiled (type errors, size limits).
+    static Script compile(Ast.Program program) {
+        byte[] bytes = new BytecodeCompiler().generate(program);
+        try {
+            Class<?> type = new ScriptLoader().define(bytes);
+            return (Script) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new UnsupportedOperationException("Generated class rejected: " + e, e);
+        }
+    }
+
+    private byte[] generate(Ast.Program program) {
+        growing = new boolean[program.objectSlots];
+        for (Ast.Stmt stmt : program.statements) {
+            rejectErrors(stmt);
+            if (stmt instanceof Ast.FunctionDecl) {
+                functions.put(((Ast.FunctionDecl) stmt).name, (Ast.FunctionDecl) stmt);
+            } else {
+                findAppends(stmt);
+            }
+        }
+
+        ClassWriter writer = new ClassWriter();
+        ClassWriter.Code init = writer.method(ClassWriter.ACC_PUBLIC, "<init>", "()V", 1);
+        init.load('A', 0);
+        init.invokeSpecial("java/lang/Object", "<init>", "()V");
+        init.op(0xB1, 0); // return
+
+        code = writer.method(ClassWriter.ACC_PUBLIC, "run", "(Ljava/lang/StringBuilder;LExecutionMonitor;)I", 3);
+        code.pushInt(0);
+        code.store('I', ERRORS);
+
+        emitLocals(ERRORS + 1, program.intSlots, program.doubleSlots, program.booleanSlots, program.objectSlots);
+
+        ClassWriter.Label start = new ClassWriter.Label();
+        ClassWriter.Label end = new ClassWriter.Label();
+        code.mark(start);
+        for (Ast.Stmt stmt : program.statements) {
+            emitStatement(stmt);
+        }
+        code.mark(end);
+
+        code.load('I', ERRORS);
+        code.op(0xAC, -1); // ireturn
+
+        if (!functions.isEmpty() && end.position > start.position) {
+            // A function stopped by the monitor passes the monitor's exception out of run()
+            ClassWriter.Label stopped = new ClassWriter.Label();
+            code.markHandler(stopped);
+            code.invokeStatic(SELF, "stopped", "(Ljava/lang/Throwable;)Ljava/lang/RuntimeException;");
+            code.op(0xBF, -1); // athrow
+            code.tryCatch(start, end, stopped, "Interpreter$Stopped");
+        }
+        for (Ast.FunctionDecl function : functions.values()) {
+            emitFunction(writer, function);
+        }
+
+        return writer.toByteArray(CLASS_NAME, "java/lang/Object", "BytecodeCompiler$Script");
+    }
+
+    // Frame slots map onto consecutive locals from first on. Every local gets a default value up front
+    // so the verifier accepts reads after a failed statement.
+    private void emitLocals(int first, int intSlots, int doubleSlots, int booleanSlots, int objectSlots) {
+        intBase = first;
+        doubleBase = intBase + intSlots;
+        booleanBase = doubleBase + doubleSlots * 2;
+        objectBase = booleanBase + booleanSlots;
+        for (int i = 0; i < intSlots + booleanSlots; i++) {
+            code.pushInt(0);
+            code.store('I', i < intSlots ? intBase + i : booleanBase + i - intSlots);
+        }
+        for (int i = 0; i < doubleSlots; i++) {
+            code.pushDouble(0);
+            code.store('D', doubleBase + i * 2);
+        }
+        for (int i = 0; i < objectSlots; i++) {
+            code.op(0x01, 1); // aconst_null
+            code.store('A', objectBase + i);
+        }
+        code.useLocals(objectBase + objectSlots);
+    }
+
+    // An instance method taking the output and monitor, then the parameters, which are copied into the
+    // locals of their variables. Nothing in it catches errors.
+    private void emitFunction(ClassWriter writer, Ast.FunctionDecl function) {
+        growing = new boolean[function.objectSlots];
+        findAppends(function.body);
+        int parameterSlots = MONITOR + 1;
+        for (Ast.Parameter parameter : function.parameters) {
+            parameterSlots += TypeChecker.declaredType(parameter.type) == Ast.Type.DOUBLE ? 2 : 1;
+        }
+        code = writer.method(ClassWriter.ACC_PUBLIC, methodName(function), descriptor(function), parameterSlots);
+        emitLocals(parameterSlots, function.intSlots, function.doubleSlots, function.booleanSlots, function.objectSlots);
+        int local = MONITOR + 1;
+        for (Ast.Parameter parameter : function.parameters) {
+            Ast.Type type = TypeChecker.declaredType(parameter.type);
+            code.load(kind(type), local);
+            code.store(kind(type), local(type, parameter.slot));
+            local += type == Ast.Type.DOUBLE ? 2 : 1;
+        }
+        // Recursion need not pass a loop, so every call is a checkpoint too
+        emitCheckpoint("checkpointCall");
+
+        inFunction = true;
+        emitStatement(function.body);
+        inFunction = false;
+
+        if (TypeChecker.returnType(function) == Ast.Type.VOID) {
+            code.op(0xB1, 0); // return
+        } else {
+            // Not reached, as TypeChecker rejects functions that can end without a return
+            code.op(0x01, 1); // aconst_null
+            code.op(0xBF, -1); // athrow
+        }
+    }
+
+    private void emitCheckpoint(String helper) {
+        code.load('A', MONITOR);
+        code.load('A', 1);
+        code.invokeStatic(SELF, helper, "(LExecutionMonitor;Ljava/lang/StringBuilder;)V");
+    }
+
+    private static String methodName(Ast.FunctionDecl function) {
+        return "function$" + function.name;
+    }
+
+    private static String descriptor(Ast.FunctionDecl function) {
+        StringBuilder descriptor = new StringBuilder("(Ljava/lang/StringBuilder;LExecutionMonitor;");
+        for (Ast.Parameter parameter : function.parameters) {
+            descriptor.append(descriptor(TypeChecker.parameterType(TypeChecker.declaredType(parameter.type))));
+        }
+        Ast.Type returnType = TypeChecker.returnType(function);
+        descriptor.append(')');
+        return descriptor.append(returnType == Ast.Type.VOID ? "V" : descriptor(TypeChecker.parameterType(returnType)))
+                .toString();
+    }
+
+    private static void rejectErrors(Ast.Stmt stmt) {
+        if (stmt.error != null) {
+            throw new UnsupportedOperationException(stmt.error);
+        }
+        if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) rejectErrors(inner);
+        } else if (stmt instanceof Ast.If) {
+            rejectErrors(((Ast.If) stmt).then);
+            if (((Ast.If) stmt).otherwise != null) rejectErrors(((Ast.If) stmt).otherwise);
+        } else if (stmt instanceof Ast.While) {
+            rejectErrors(((Ast.While) stmt).body);
+        } else if (stmt instanceof Ast.FunctionDecl) {
+            rejectErrors(((Ast.FunctionDecl) stmt).body);
+        }
+    }
+
+    private void findAppends(Ast.Stmt stmt) {
+        if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) findAppends(inner);
+        } else if (stmt instanceof Ast.If) {
+            findAppends(((Ast.If) stmt).then);
+            if (((Ast.If) stmt).otherwise != null) findAppends(((Ast.If) stmt).otherwise);
+        } else if (stmt instanceof Ast.While) {
+            findAppends(((Ast.While) stmt).body);
+        } else if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            if (Interpreter.appended(TypeChecker.declaredType(decl.type), decl.slot, decl.init) != null) {
+                growing[decl.slot] = true;
+            }
+        } else if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            if (Interpreter.appended(assign.type, assign.slot, assign.value) != null) growing[assign.slot] = true;
+        }
+    }
+
+    private void emitStatement(Ast.Stmt stmt) {
+        if (stmt instanceof Ast.FunctionDecl) {
+            // Emitted as a method of its own
+        } else if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                emitStatement(inner);
+            }
+        } else if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            ClassWriter.Label otherwise = new ClassWriter.Label();
+            ClassWriter.Label end = new ClassWriter.Label();
+            emitGuardedBranch(branch.condition, otherwise, end);
+            emitStatement(branch.then);
+            if (branch.otherwise != null) {
+                code.jump(0xA7, end, 0); // goto
+                code.mark(otherwise);
+                emitStatement(branch.otherwise);
+            } else {
+                code.mark(otherwise);
+            }
+            code.mark(end);
+        } else if (stmt instanceof Ast.While) {
+            Ast.While loop = (Ast.While) stmt;
+            ClassWriter.Label top = new ClassWriter.Label();
+            ClassWriter.Label end = new ClassWriter.Label();
+            code.mark(top);
+            emitGuardedBranch(loop.condition, end, end);
+            emitStatement(loop.body);
+            emitCheckpoint(inFunction ? "checkpointCall" : "checkpoint");
+            code.jump(0xA7, top, 0); // goto
+            code.mark(end);
+        } else if (inFunction) {
+            emitSimpleStatement(stmt);
+        } else {
+            // Each simple statement is its own try block so a runtime error is reported and execution carries on
+            ClassWriter.Label start = new ClassWriter.Label();
+            ClassWriter.Label end = new ClassWriter.Label();
+            ClassWriter.Label handler = new ClassWriter.Label();
+            ClassWriter.Label next = new ClassWriter.Label();
+            code.mark(start);
+            emitSimpleStatement(stmt);
+            code.mark(end);
+            code.jump(0xA7, next, 0); // goto
+            code.markHandler(handler);
+            emitReportError();
+            code.mark(next);
+            emitCatch(start, end, handler);
+        }
+    }
+
+    private void emitCatch(ClassWriter.Label start, ClassWriter.Label end, ClassWriter.Label handler) {
+        code.tryCatch(start, end, handler, "java/lang/Exception");
+        if (!functions.isEmpty()) {
+            code.tryCatch(start, end, handler, "java/lang/StackOverflowError"); // from runaway recursion
+        }
+    }
+
+    // Jumps to ifFalse when the condition does not hold; if evaluating it throws, the error is reported
+    // and execution continues at onError
+    private void emitGuardedBranch(Ast.Expr condition, ClassWriter.Label ifFalse, ClassWriter.Label onError) {
+        if (inFunction) {
+            emitBranch(condition, false, ifFalse);
+            return;
+        }
+        ClassWriter.Label start = new ClassWriter.Label();
+        ClassWriter.Label end = new ClassWriter.Label();
+        ClassWriter.Label handler = new ClassWriter.Label();
+        ClassWriter.Label next = new ClassWriter.Label();
+        code.mark(start);
+        emitBranch(condition, false, ifFalse);
+        code.mark(end);
+        code.jump(0xA7, next, 0); // goto
+        code.markHandler(handler);
+        emitReportError();
+        code.jump(0xA7, onError, 0); // goto
+        code.mark(next);
+        emitCatch(start, end, handler);
+    }
+
+    private void emitReportError() {
+        code.load('A', 1);
+        code.invokeStatic(SELF, "reportError", "(Ljava/lang/Throwable;Ljava/lang/StringBuilder;)V");
+        code.load('I', ERRORS);
+        code.pushInt(1);
+        code.op(0x60, -1); // iadd
+        code.store('I', ERRORS);
+    }
+
+    // Jumps to target when the boolean expression equals jumpIf, short-circuiting && and ||
+    private void emitBranch(Ast.Expr expr, boolean jumpIf, ClassWriter.Label target) {
+        if (expr instanceof Ast.Unary && ((Ast.Unary) expr).op.equals("!")) {
+            emitBranch(((Ast.Unary) expr).operand, !jumpIf, target);
+            return;
+        }
+        if (!(expr instanceof Ast.Binary)) {
+            emitExpression(expr);
+            code.jump(jumpIf ? 0x9A : 0x99, target, -1); // ifne / ifeq
+            return;
+        }
+        Ast.Binary binary = (Ast.Binary) expr;
+        if (binary.op.equals("&&") || binary.op.equals("||")) {
+            // a && b jumps on false if either side is false; a || b jumps on true if either side is true
+            boolean shortCircuit = binary.op.equals("||");
+            if (jumpIf == shortCircuit) {
+                emitBranch(binary.left, jumpIf, target);
+                emitBranch(binary.right, jumpIf, target);
+            } else {
+                ClassWriter.Label skip = new ClassWriter.Label();
+                emitBranch(binary.left, shortCircuit, skip);
+                emitBranch(binary.right, jumpIf, target);
+                code.mark(skip);
+            }
+            return;
+        }
+
+        int comparison = Node.comparison(binary.op);
+        int condition = jumpIf ? comparison : comparison ^ 1;
+        Ast.Type type = TypeChecker.comparisonType(binary.left.type, binary.right.type);
+        emitExpression(binary.left);
+        emitConversion(binary.left.type, type);
+        emitExpression(binary.right);
+        emitConversion(binary.right.type, type);
+        switch (type) {
+            case INT:
+            case BOOLEAN:
+                code.jump(0x9F + condition, target, -2); // if_icmp<cond>
+                break;
+            case LONG:
+                code.op(0x94, -3); // lcmp
+                code.jump(0x99 + condition, target, -1); // if<cond>
+                break;
+            case DOUBLE:
+                // dcmpg makes NaN compare greater and dcmpl less, so < and > are false for NaN
+                boolean less = comparison == Node.LT || comparison == Node.LE;
+                code.op(less ? 0x98 : 0x97, -3); // dcmpg / dcmpl
+                code.jump(0x99 + condition, target, -1); // if<cond>
+                break;
+            default:
+                code.jump(0xA5 + condition, target, -2); // if_acmpeq / if_acmpne
+        }
+    }
+
+    // Materialises a comparison or logical expression as 0 or 1
+    private void emitBooleanValue(Ast.Expr expr) {
+        ClassWriter.Label isFalse = new ClassWriter.Label();
+        ClassWriter.Label end = new ClassWriter.Label();
+        emitBranch(expr, false, isFalse);
+        code.pushInt(1);
+        code.jump(0xA7, end, 0); // goto
+        code.mark(isFalse);
+        code.pushInt(0);
+        code.mark(end);
+    }
+
+    private void emitSimpleStatement(Ast.Stmt stmt) {
+        if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            emitStore(TypeChecker.declaredType(decl.type), decl.slot, decl.init);
+        } else if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            emitStore(assign.type, assign.slot, assign.value);
+        } else if (stmt instanceof Ast.Print) {
+            Ast.Expr value = ((Ast.Print) stmt).value;
+            code.load('A', 1);
+            emitExpression(value);
+            emitAppend(value.type);
+            emitNewline();
+        } else if (stmt instanceof Ast.ExprStmt) {
+            Ast.Expr expr = ((Ast.ExprStmt) stmt).expr;
+            switch (expr.type) {
+                case VOID:
+                    emitExpression(expr);
+                    break;
+                case STRING:
+                case OBJECT:
+                case INT_ARRAY:
+                case DOUBLE_ARRAY:
+                    // Reference results are only printed when not null
+                    emitExpression(expr);
+                    code.load('A', 1);
+                    code.invokeStatic(SELF, "printResult", "(Ljava/lang/Object;Ljava/lang/StringBuilder;)V");
+                    break;
+                default:
+                    code.load('A', 1);
+                    emitExpression(expr);
+                    emitAppend(expr.type);
+                    emitNewline();
+            }
+        } else if (stmt instanceof Ast.Return) {
+            Ast.Return ret = (Ast.Return) stmt;
+            if (ret.value == null) {
+                code.op(0xB1, 0); // return
+                return;
+            }
+            emitExpression(ret.value);
+            emitConversion(ret.value.type, ret.type);
+            switch (kind(ret.type)) {
+                case 'D': code.op(0xAF, -2); break; // dreturn
+                case 'A': code.op(0xB0, -1); break; // areturn
+                default: code.op(0xAC, -1); // ireturn
+            }
+        } else if (stmt instanceof Ast.Invalid) {
+            code.load('A', 1);
+            code.pushString(((Ast.Invalid) stmt).message);
+            emitAppend(Ast.Type.STRING);
+            emitNewline();
+        }
+    }
+
+    private void emitStore(Ast.Type type, int slot, Ast.Expr value) {
+        List<Ast.Expr> appended = Interpreter.appended(type, slot, value);
+        if (appended != null) {
+            // The parts are joined first, so a part that fails leaves the variable as it was
+            code.load('A', local(type, slot));
+            if (appended.size() == 1 && appended.get(0).type == Ast.Type.STRING) {
+                emitExpression(appended.get(0));
+            } else {
+                code.newObject(BUILDER);
+                code.op(0x59, 1); // dup
+                code.invokeSpecial(BUILDER, "<init>", "()V");
+                for (Ast.Expr part : appended) {
+                    emitExpression(part);
+                    emitAppend(part.type);
+                }
+                code.invokeVirtual(BUILDER, "toString", "()Ljava/lang/String;");
+            }
+            code.invokeStatic(SELF, "append", "(Ljava/lang/Object;Ljava/lang/String;)Ljava/lang/Object;");
+            code.store('A', local(type, slot));
+            return;
+        }
+        emitExpression(value);
+        emitConversion(value.type, type);
+        code.store(kind(type), local(type, slot));
+    }
+
+    private int local(Ast.Type type, int slot) {
+        switch (type) {
+            case INT: return intBase + slot;
+            case DOUBLE: return doubleBase + slot * 2;
+            case BOOLEAN: return booleanBase + slot;
+            default: return objectBase + slot;
+        }
+    }
+
+    private void emitExpression(Ast.Expr expr) {
+        if (expr instanceof Ast.Literal) {
+            Object value = ((Ast.Literal) expr).value;
+            if (value instanceof Integer) {
+                code.pushInt((Integer) value);
+            } else if (value instanceof Double) {
+                code.pushDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                code.pushInt((Boolean) value ? 1 : 0);
+            } else {
+                code.pushString((String) value);
+            }
+        } else if (expr instanceof Ast.Variable) {
+            int slot = ((Ast.Variable) expr).slot;
+            code.load(kind(expr.type), local(expr.type, slot));
+            if (expr.type == Ast.Type.STRING && growing[slot]) {
+                code.invokeStatic(SELF, "flatten", "(Ljava/lang/Object;)Ljava/lang/String;");
+            }
+        } else if (expr.type == Ast.Type.BOOLEAN && (expr instanceof Ast.Unary || expr instanceof Ast.Binary)) {
+            emitBooleanValue(expr);
+        } else if (expr instanceof Ast.Unary) {
+            Ast.Expr operand = ((Ast.Unary) expr).operand;
+            emitExpression(operand);
+            emitConversion(operand.type, expr.type);
+            // ineg / lneg / dneg
+            code.op(expr.type == Ast.Type.INT ? 0x74 : expr.type == Ast.Type.LONG ? 0x75 : 0x77, 0);
+        } else if (expr instanceof Ast.Binary) {
+            emitBinary((Ast.Binary) expr);
+        } else if (expr instanceof Ast.Call && ((Ast.Call) expr).function == null) {
+            Ast.Call call = (Ast.Call) expr;
+            Ast.FunctionDecl function = functions.get(call.name);
+            code.load('A', 0);
+            code.load('A', 1);
+            code.load('A', MONITOR);
+            for (int i = 0; i < call.args.size(); i++) {
+                Ast.Expr arg = call.args.get(i);
+                emitExpression(arg);
+                emitConversion(arg.type, TypeChecker.declaredType(function.parameters.get(i).type));
+            }
+            code.invokeVirtual(CLASS_NAME, methodName(function), descriptor(function));
+        } else if (expr instanceof Ast.Call) {
+            Ast.Call call = (Ast.Call) expr;
+            Method method = call.function.method;
+            Class<?>[] params = method.getParameterTypes();
+            for (int i = 0; i < params.length; i++) {
+                Ast.Expr arg = call.args.get(i);
+                if (params[i] == CharSequence.class && arg instanceof Ast.Variable) {
+                    // A GrowingString is passed as it is
+                    code.load('A', local(arg.type, ((Ast.Variable) arg).slot));
+                    continue;
+                }
+                emitExpression(arg);
+                emitConversion(arg.type, TypeChecker.typeOf(params[i]));
+            }
+            String owner = method.getDeclaringClass().getName().replace('.', '/');
+            code.invokeStatic(owner, method.getName(), descriptor(method));
+        }
+    }
+
+    private void emitBinary(Ast.Binary binary) {
+        if (binary.type == Ast.Type.STRING) {
+            code.newObject(BUILDER);
+            code.op(0x59, 1); // dup
+            code.invokeSpecial(BUILDER, "<init>", "()V");
+            emitExpression(binary.left);
+            emitAppend(binary.left.type);
+            emitExpression(binary.right);
+            emitAppend(binary.right.type);
+            code.invokeVirtual(BUILDER, "toString", "()Ljava/lang/String;");
+            return;
+        }
+
+        emitExpression(binary.left);
+        emitConversion(binary.left.type, binary.type);
+        emitExpression(binary.right);
+        emitConversion(binary.right.type, binary.type);
+        // The i, l and d forms of each instruction are consecutive opcodes; long and double take two slots
+        int offset, pop;
+        switch (binary.type) {
+            case INT: offset = 0; pop = -1; break;
+            case LONG: offset = 1; pop = -2; break;
+            default: offset = 3; pop = -2;
+        }
+        switch (binary.op) {
+            case "+":
+                code.op(0x60 + offset, pop); // iadd / ladd / dadd
+                break;
+            case "-":
+                code.op(0x64 + offset, pop); // isub / lsub / dsub
+                break;
+            case "*":
+                code.op(0x68 + offset, pop); // imul / lmul / dmul
+                break;
+            case "%":
+                code.op(0x70 + offset, pop); // irem / lrem / drem
+                break;
+            default:
+                code.op(0x6C + offset, pop); // idiv / ldiv / ddiv
+        }
+    }
+
+    private void emitConversion(Ast.Type from, Ast.Type to) {
+        if (from == to) return;
+        if (from == Ast.Type.INT && to == Ast.Type.DOUBLE) code.op(0x87, 1); // i2d
+        else if (from == Ast.Type.LONG && to == Ast.Type.DOUBLE) code.op(0x8A, 0); // l2d
+        else if (from == Ast.Type.LONG && to == Ast.Type.INT) code.op(0x88, -1); // l2i
+        else if (from == Ast.Type.DOUBLE && to == Ast.Type.INT) code.op(0x8E, -1); // d2i
+        else if (from == Ast.Type.INT && to == Ast.Type.LONG) code.op(0x85, 1); // i2l
+        else if (to == Ast.Type.OBJECT) emitBoxing(from);
+    }
+
+    private void emitBoxing(Ast.Type type) {
+        switch (type) {
+            case INT:
+                code.invokeStatic("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+                break;
+            case LONG:
+                code.invokeStatic("java/lang/Long", "valueOf", "(J)Ljava/lang/Long;");
+                break;
+            case DOUBLE:
+                code.invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+                break;
+            case BOOLEAN:
+                code.invokeStatic("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+                break;
+            case CHAR:
+                code.invokeStatic("java/lang/Character", "valueOf", "(C)Ljava/lang/Character;");
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Appends the value on top of the stack to the StringBuilder below it
+    private void emitAppend(Ast.Type type) {
+        code.invokeVirtual(BUILDER, "append", "(" + appendDescriptor(type) + ")Ljava/lang/StringBuilder;");
+    }
+
+    private void emitNewline() {
+        code.pushInt('\n');
+        code.invokeVirtual(BUILDER, "append", "(C)Ljava/lang/StringBuilder;");
+        code.op(0x57, -1); // pop
+    }
+
+    private static String appendDescriptor(Ast.Type type) {
+        switch (type) {
+            case INT: return "I";
+            case LONG: return "J";
+            case DOUBLE: return "D";
+            case BOOLEAN: return "Z";
+            case CHAR: return "C";
+            case STRING: return "Ljava/lang/String;";
+            default: return "Ljava/lang/Object;";
+        }
+    }
+
+    private static char kind(Ast.Type type) {
+        switch (type) {
+            case DOUBLE: return 'D';
+            case LONG: return 'J';
+            case STRING:
+            case OBJECT:
+            case INT_ARRAY:
+            case DOUBLE_ARRAY: return 'A';
+            default: return 'I';
+        }
+    }
+
+    private static String descriptor(Method method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> param : method.getParameterTypes()) {
+            descriptor.append(descriptor(param));
+        }
+        return descriptor.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) return "[" + descriptor(type.getComponentType());
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == double.class) return "D";
+        if (type == boolean.class) return "Z";
+        if (type == char.class) return "C";
+        if (type == void.class) return "V";
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    // Runtime helpers called from generated code
+    public static void reportError(Throwable error, StringBuilder output) {
+        output.append("Error: ").append(FunctionRegistry.message(error)).append("\n");
+    }
+
+    public static void checkpoint(ExecutionMonitor monitor, StringBuilder output) {
+        if (monitor != null) {
+            monitor.checkpoint(output);
+        }
+    }
+
+    // At loop back edges and calls in functions. Stopping there must not be taken for an error of the
+    // statement that made the call, so the monitor's exception travels as an Error until run() rethrows it.
+    public static void checkpointCall(ExecutionMonitor monitor, StringBuilder output) {
+        if (monitor != null) {
+            try {
+                monitor.checkpoint(output);
+            } catch (RuntimeException e) {
+                throw new Interpreter.Stopped(e);
+            }
+        }
+    }
+
+    public static RuntimeException stopped(Throwable stopped) {
+        return ((Interpreter.Stopped) stopped).reason;
+    }
+
+    // Returns the GrowingString the local holds from now on
+    public static Object append(Object current, String tail) {
+        GrowingString text = current instanceof GrowingString ? (GrowingString) current : new GrowingString((String) current);
+        text.append().append(tail);
+        return text;
+    }
+
+    public static String flatten(Object value) {
+        return value instanceof GrowingString ? value.toString() : (String) value;
+    }
+
+    public static void printResult(Object result, StringBuilder output) {
+        if (result != null) {
+            output.append(result).append("\n");
+        }
+    }
+
+    // Each script gets its own loader so the class can be unloaded with it
+    private static final class ScriptLoader extends ClassLoader {
+        ScriptLoader() {
+            super(BytecodeCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] bytes) {
+            return defineClass(CLASS_NAME, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal class file writer for BytecodeCompiler. It emits version 49 class files, which the JVM
+// verifies by type inference, so no StackMapTable frames have to be computed.
+class ClassWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<Code> methods = new ArrayList<>();
+
+    // Constant pool
+    int utf8(String value) {
+        Integer index = poolIndex.get("U" + value);
+        if (index != null) return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new UnsupportedOperationException("Constant too large for a class file");
+        }
+        return register("U" + value, 1);
+    }
+
+    int classRef(String internalName) {
+        return entry("C" + internalName, 7, utf8(internalName));
+    }
+
+    int string(String value) {
+        return entry("S" + value, 8, utf8(value));
+    }
+
+    int integer(int value) {
+        Integer index = poolIndex.get("I" + value);
+        if (index != null) return index;
+        write(3);
+        writeInt(value);
+        return register("I" + value, 1);
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = poolIndex.get("D" + bits);
+        if (index != null) return index;
+        write(6);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
+        return register("D" + bits, 2);
+    }
+
+    int methodRef(String owner, String name, String descriptor, boolean isInterface) {
+        int classIndex = classRef(owner);
+        int nameAndType = entry("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+        return entry((isInterface ? "J" : "M") + owner + "." + name + descriptor, isInterface ? 11 : 10,
+                classIndex, nameAndType);
+    }
+
+    private int entry(String key, int tag, int... operands) {
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        write(tag);
+        for (int operand : operands) {
+            write(operand >>> 8);
+            write(operand);
+        }
+        return register(key, 1);
+    }
+
+    private int register(String key, int slots) {
+        int index = poolCount;
+        if (index + slots > 0xFFFF) {
+            throw new UnsupportedOperationException("Too many constants for a class file");
+        }
+        poolIndex.put(key, index);
+        poolCount += slots;
+        return index;
+    }
+
+    private void write(int b) {
+        poolBytes.write(b);
+    }
+
+    private void writeInt(int value) {
+        write(value >>> 24);
+        write(value >>> 16);
+        write(value >>> 8);
+        write(value);
+    }
+
+    Code method(int access, String name, String descriptor, int parameterSlots) {
+        Code code = new Code(this, access, utf8(name), utf8(descriptor), parameterSlots);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray(String name, String superName, String... interfaces) {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+        int codeName = utf8("Code");
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaceIndexes.length);
+            for (int index : interfaceIndexes) out.writeShort(index);
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.writeTo(out, codeName);
+            }
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Handler {
+        final Label start, end, handler;
+        final int type;
+
+        Handler(Label start, Label end, Label handler, int type) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    static final class Label {
+        int position = -1;
+        int stack = -1;
+        private final List<Integer> references = new ArrayList<>();
+    }
+
+    // Bytecode of one method. Operand stack depth is tracked as instructions are added.
+    static final class Code {
+        private final ClassWriter owner;
+        private final int access, name, descriptor;
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int stack, maxStack;
+        private int maxLocals;
+        private final List<Handler> exceptionTable = new ArrayList<>();
+        private final List<Label> labels = new ArrayList<>();
+
+        private Code(ClassWriter owner, int access, int name, int descriptor, int parameterSlots) {
+            this.owner = owner;
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = parameterSlots;
+        }
+
+        ClassWriter owner() {
+            return owner;
+        }
+
+        void op(int opcode, int stackChange) {
+            u1(opcode);
+            adjust(stackChange);
+        }
+
+        void opWithIndex(int opcode, int index, int stackChange) {
+            u1(opcode);
+            u2(index);
+            adjust(stackChange);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value, 1); // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(0x10); // bipush
+                u1(value);
+                adjust(1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(0x11); // sipush
+                u2(value);
+                adjust(1);
+            } else {
+                ldc(owner.integer(value), 1);
+            }
+        }
+
+        void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                op(0x0E, 2); // dconst_0
+            } else if (value == 1.0) {
+                op(0x0F, 2); // dconst_1
+            } else {
+                opWithIndex(0x14, owner.doubleConstant(value), 2); // ldc2_w
+            }
+        }
+
+        void pushString(String value) {
+            ldc(owner.string(value), 1);
+        }
+
+        private void ldc(int index, int size) {
+            if (index <= 0xFF) {
+                u1(0x12);
+                u1(index);
+                adjust(size);
+            } else {
+                opWithIndex(0x13, index, size); // ldc_w
+            }
+        }
+
+        // Loads and stores; kind is one of 'I', 'J', 'D', 'A'
+        void load(char kind, int local) {
+            localInstruction(kind == 'I' ? 0x15 : kind == 'J' ? 0x16 : kind == 'D' ? 0x18 : 0x19, local);
+            adjust(kind == 'J' || kind == 'D' ? 2 : 1);
+        }
+
+        void store(char kind, int local) {
+            localInstruction(kind == 'I' ? 0x36 : kind == 'J' ? 0x37 : kind == 'D' ? 0x39 : 0x3A, local);
+            adjust(kind == 'J' || kind == 'D' ? -2 : -1);
+        }
+
+        private void localInstruction(int opcode, int local) {
+            if (local > 0xFF) {
+                u1(0xC4); // wide
+                u1(opcode);
+                u2(local);
+            } else {
+                u1(opcode);
+                u1(local);
+            }
+        }
+
+        void newObject(String internalName) {
+            opWithIndex(0xBB, owner.classRef(internalName), 1);
+        }
+
+        void invokeStatic(String ownerName, String methodName, String methodDescriptor) {
+            opWithIndex(0xB8, owner.methodRef(ownerName, methodName, methodDescriptor, false),
+                    returnSlots(methodDescriptor) - argumentSlots(methodDescriptor));
+        }
+
+        void invokeVirtual(String ownerName, String methodName, String methodDescriptor) {
+            opWithIndex(0xB6, owner.methodRef(ownerName, methodName, methodDescriptor, false),
+                    returnSlots(methodDescriptor) - argumentSlots(methodDescriptor) - 1);
+        }
+
+        void invokeSpecial(String ownerName, String methodName, String methodDescriptor) {
+            opWithIndex(0xB7, owner.methodRef(ownerName, methodName, methodDescriptor, false),
+                    returnSlots(methodDescriptor) - argumentSlots(methodDescriptor) - 1);
+        }
+
+        // Conditional and unconditional jumps; stackChange is the effect of the jump instruction itself
+        void jump(int opcode, Label target, int stackChange) {
+            int at = length;
+            u1(opcode);
+            u2(0);
+            adjust(stackChange);
+            target.references.add(at);
+            if (target.stack < 0) target.stack = stack;
+            if (!labels.contains(target)) labels.add(target);
+        }
+
+        void mark(Label label) {
+            label.position = length;
+            if (label.stack >= 0) {
+                stack = label.stack;
+            } else {
+                label.stack = stack;
+            }
+            if (!labels.contains(label)) labels.add(label);
+        }
+
+        // Marks an exception handler entry point, where only the exception is on the stack
+        void markHandler(Label label) {
+            label.stack = 1;
+            mark(label);
+            maxStack = Math.max(maxStack, 1);
+        }
+
+        void tryCatch(Label start, Label end, Label handler, String exceptionType) {
+            exceptionTable.add(new Handler(start, end, handler, owner.classRef(exceptionType)));
+        }
+
+        void useLocals(int count) {
+            maxLocals = Math.max(maxLocals, count);
+        }
+
+        private void adjust(int change) {
+            stack += change;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        private void writeTo(DataOutputStream out, int codeName) throws IOException {
+            if (length > 0xFFFF) {
+                throw new UnsupportedOperationException("Program too large for a single method");
+            }
+            for (Label label : labels) {
+                for (int at : label.references) {
+                    int offset = label.position - at;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new UnsupportedOperationException("Jump too far");
+                    }
+                    bytes[at + 1] = (byte) (offset >>> 8);
+                    bytes[at + 2] = (byte) offset;
+                }
+            }
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1); // attributes
+            out.writeShort(codeName);
+            out.writeInt(12 + length + exceptionTable.size() * 8);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+            out.writeShort(exceptionTable.size());
+            for (Handler handler : exceptionTable) {
+                out.writeShort(handler.start.position);
+                out.writeShort(handler.end.position);
+                out.writeShort(handler.handler.position);
+                out.writeShort(handler.type);
+            }
+            out.writeShort(0); // code attributes
+        }
+
+        private static int argumentSlots(String descriptor) {
+            int slots = 0;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                char c = descriptor.charAt(i);
+                if (c == 'J' || c == 'D') {
+                    slots += 2;
+                    i++;
+                } else {
+                    slots++;
+                    while (descriptor.charAt(i) == '[') i++;
+                    i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+                }
+            }
+            return slots;
+        }
+
+        private static int returnSlots(String descriptor) {
+            char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+            return c == 'V' ? 0 : c == 'J' || c == 'D' ? 2 : 1;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Headless runner for scripts and directories of scripts. Touches no AWT class, so it starts as fast
+// as the JVM does and can run in CI or batch jobs.
+//
+//   java CompilerCLI [options] <file or directory>...
+//
+// Exit status: 0 when every script ran cleanly, 1 when any script had syntax, type or runtime errors,
+// 2 for bad usage or unreadable input.
+public class CompilerCLI {
+    static final int OK = 0, SCRIPT_ERRORS = 1, FAILURE = 2;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java CompilerCLI [options] <file or directory>...",
+            "  -o, --output <dir>  write each script's output to <dir>/<script>.out instead of stdout",
+            "  --ext <suffix>      suffix of the scripts picked up from directories (default .java)",
+            "  --bytecode          run scripts as generated JVM classes",
+            "  -j, --jobs <n>      scripts run in parallel (default: number of cores)",
+            "  --cache <dir>       keep compiled scripts in <dir> for later runs to reuse",
+            "  --cache-stats       report compiled-program cache hits and misses on stderr",
+            "  --profile           report where each script spent its time on stderr",
+            "  -h, --help          show this help");
+
+    private final JavaSubsetCompiler compiler = new JavaSubsetCompiler();
+    private final PrintWriter out;
+    private final PrintWriter err;
+    private Path outputDirectory;
+    private String extension = ".java";
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private boolean cacheStats;
+    private boolean profile;
+
+    CompilerCLI(PrintWriter out, PrintWriter err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        PrintWriter err = new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), true);
+        int status = new CompilerCLI(out, err).run(args);
+        out.flush();
+        System.exit(status);
+    }
+
+    int run(String[] args) {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-h":
+                case "--help":
+                    out.println(USAGE);
+                    return OK;
+                case "-o":
+                case "--output":
+                    if (++i == args.length) return usage("Missing directory after " + args[i - 1]);
+                    outputDirectory = Paths.get(args[i]);
+                    break;
+                case "--ext":
+                    if (++i == args.length) return usage("Missing suffix after --ext");
+                    extension = args[i];
+                    break;
+                case "--bytecode":
+                    compiler.setBytecodeBackend(true);
+                    break;
+                case "-j":
+                case "--jobs":
+                    if (++i == args.length) return usage("Missing count after " + args[i - 1]);
+                    try {
+                        jobs = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        jobs = 0;
+                    }
+                    if (jobs < 1) return usage("Bad job count " + args[i]);
+                    break;
+                case "--cache":
+                    if (++i == args.length) return usage("Missing directory after --cache");
+                    compiler.setCache(new ProgramCache(JavaSubsetCompiler.CACHE_CAPACITY, Paths.get(args[i])));
+                    break;
+                case "--cache-stats":
+                    cacheStats = true;
+                    break;
+                case "--profile":
+                    profile = true;
+                    break;
+                default:
+                    if (args[i].startsWith("-")) return usage("Unknown option " + args[i]);
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            return usage("No scripts given");
+        }
+
+        // Everything is submitted up front; results are reported in input order as they complete
+        int status = OK;
+        List<Path> scriptInputs = new ArrayList<>();
+        List<Path> scripts = new ArrayList<>();
+        for (Path input : inputs) {
+            try {
+                for (Path script : collect(input)) {
+                    scriptInputs.add(input);
+                    scripts.add(script);
+                }
+            } catch (IOException e) {
+                err.println(input + ": " + e.getMessage());
+                status = FAILURE;
+            }
+        }
+        boolean headers = scripts.size() > 1 || inputs.stream().anyMatch(Files::isDirectory);
+        try (ExecutionService service = new ExecutionService(compiler, jobs)) {
+            List<CompletableFuture<ExecutionService.Result>> results = new ArrayList<>();
+            List<Profile> profiles = new ArrayList<>();
+            for (Path script : scripts) {
+                Profile scriptProfile = profile ? new Profile() : null;
+                profiles.add(scriptProfile);
+                results.add(service.submit(script, scriptProfile));
+            }
+            for (int i = 0; i < scripts.size(); i++) {
+                status = Math.max(status, report(scriptInputs.get(i), scripts.get(i), results.get(i).join(), headers));
+                if (profile) {
+                    err.println("Profile of " + scripts.get(i) + ":");
+                    err.print(profiles.get(i).report());
+                    err.flush();
+                }
+            }
+        }
+        if (cacheStats) {
+            err.println("Program cache: " + compiler.cache().stats());
+        }
+        return status;
+    }
+
+    private List<Path> collect(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            if (!Files.isReadable(input)) throw new IOException("No such file");
+            return List.of(input);
+        }
+        try (Stream<Path> files = Files.walk(input)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(extension) && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private int report(Path input, Path script, ExecutionService.Result result, boolean header) {
+        if (result.failure != null) {
+            err.println(script + ": " + result.failure.getMessage());
+            return FAILURE;
+        }
+        String text = result.output;
+        int errors = result.errors;
+
+        if (outputDirectory == null) {
+            if (header) out.println("==> " + script + " <==");
+            if (!text.isEmpty()) out.println(text);
+        } else {
+            Path relative = Files.isDirectory(input) ? input.relativize(script) : script.getFileName();
+            Path target = outputDirectory.resolve(relative + ".out");
+            try {
+                Files.createDirectories(target.toAbsolutePath().getParent());
+                try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                    writer.write(text);
+                    if (!text.isEmpty()) writer.write('\n');
+                }
+            } catch (IOException e) {
+                err.println(target + ": " + e.getMessage());
+                return FAILURE;
+            }
+        }
+        if (errors > 0) {
+            err.println(script + ": " + errors + (errors == 1 ? " error" : " errors"));
+            return SCRIPT_ERRORS;
+        }
+        return OK;
+    }
+
+    private int usage(String message) {
+        err.println(message);
+        err.println(USAGE);
+        return FAILURE;
+    }
+}
@@ -1,20 +1,41 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
-import java.lang.reflect.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.List;
-import java.util.regex.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 
 public class CompilerUI extends JFrame {
-    private JTextArea codeEditor, outputArea;
-    private JButton runButton, helpButton, themeToggleButton, lexButton;
+    private JTextArea codeEditor;
+    // The output pane shows the console, the token table or the last profile; all only render the rows in view
+    private static final String CONSOLE = "console", TOKENS = "tokens", PROFILE = "profile";
+    private static final int CONSOLE_LINES = 100_000;
+    private final ConsoleModel console = new ConsoleModel(CONSOLE_LINES);
+    private final TokenTableModel tokenModel = new TokenTableModel();
+    private final ProfileTableModel profileModel = new ProfileTableModel();
+    private JList<String> consoleList;
+    private JTable tokenTable, profileTable;
+    private JPanel outputCards;
+    private JButton runButton, stopButton, helpButton, themeToggleButton, lexButton, profileButton;
+    private JCheckBox profileRuns;
+    private JLabel statusLabel, problemsLabel;
     private JavaSubsetCompiler compiler = new JavaSubsetCompiler();
+    // Kept up to date with every edit; type checking waits until typing pauses
+    private final IncrementalAnalysis analysis = new IncrementalAnalysis();
+    private final javax.swing.Timer checkTimer = new javax.swing.Timer(150, e -> showProblems());
     private boolean darkTheme = true;
+    private ProgramRun currentRun;
 
     public CompilerUI() {
         setTitle("Java Subset Compiler");
@@ -42,6 +63,12 @@ public class CompilerUI extends JFrame {
         lexButton.setToolTipText("Perform lexical analysis");
         lexButton.addActionListener(e -> performLexicalAnalysis());
         buttonPanel.add(lexButton);
+
+        // Profile of the last profiled run
+        profileButton = new JButton("Profile");
+        profileButton.setToolTipText("Show where the last profiled run spent its time");
+        profileButton.addActionListener(e -> showProfile());
+        buttonPanel.add(profileButton);
         
         // Theme toggle button
         themeToggleButton = new JButton("☀");
@@ -55,11 +82,44 @@ public class CompilerUI extends JFrame {
         // Main Panel (Code Editor + Output)
         JPanel mainPanel = new JPanel(new GridLayout(1, 2, 10, 10));
         codeEditor = new JTextArea();
-        outputArea = new JTextArea();
-        outputArea.setEditable(false);
+        codeEditor.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                analyzeEdit(e.getDocument(), e.getOffset(), 0, e.getLength());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                analyzeEdit(e.getDocument(), e.getOffset(), e.getLength(), 0);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        checkTimer.setRepeats(false);
+        Font monospaced = new Font(Font.MONOSPACED, Font.PLAIN, 13);
+        consoleList = new JList<>(console);
+        consoleList.setFont(monospaced);
+        // Fixed cell sizes keep the list from measuring every row
+        consoleList.setFixedCellHeight(consoleList.getFontMetrics(monospaced).getHeight());
+        consoleList.setFixedCellWidth(1);
+        tokenTable = new JTable(tokenModel);
+        tokenTable.setFont(monospaced);
+        tokenTable.setFillsViewportHeight(true);
+        tokenTable.getColumnModel().getColumn(1).setPreferredWidth(300);
+        profileTable = new JTable(profileModel);
+        profileTable.setFont(monospaced);
+        profileTable.setFillsViewportHeight(true);
+        profileTable.setAutoCreateRowSorter(true);
+
+        outputCards = new JPanel(new CardLayout());
+        outputCards.add(new JScrollPane(consoleList), CONSOLE);
+        outputCards.add(new JScrollPane(tokenTable), TOKENS);
+        outputCards.add(new JScrollPane(profileTable), PROFILE);
 
         mainPanel.add(createLabeledPanel("CODE", new JScrollPane(codeEditor)));
-        mainPanel.add(createLabeledPanel("OUTPUT", new JScrollPane(outputArea)));
+        mainPanel.add(createLabeledPanel("OUTPUT", outputCards));
         add(mainPanel, BorderLayout.CENTER);
 
         // Bottom Panel (Run and Help Buttons)
@@ -67,29 +127,75 @@ public class CompilerUI extends JFrame {
         runButton.setFont(new Font("Arial", Font.BOLD, 16));
         runButton.addActionListener(this::executeCode);
 
+        stopButton = new JButton("Stop");
+        stopButton.setFont(new Font("Arial", Font.BOLD, 16));
+        stopButton.setEnabled(false);
+        stopButton.addActionListener(e -> stopExecution());
+
+        profileRuns = new JCheckBox("Profile");
+        profileRuns.setToolTipText("Time each line and builtin of the next runs; they run a little slower");
+
+        statusLabel = new JLabel(" ");
+        statusLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+
+        problemsLabel = new JLabel("No problems");
+        problemsLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+
         helpButton = new JButton("Help");
         helpButton.setFont(new Font("Arial", Font.BOLD, 16));
         helpButton.addActionListener(e -> openHelpManual());
 
         JPanel bottomPanel = new JPanel();
         bottomPanel.add(runButton);
+        bottomPanel.add(stopButton);
+        bottomPanel.add(profileRuns);
         bottomPanel.add(helpButton);
+        bottomPanel.add(statusLabel);
+        bottomPanel.add(problemsLabel);
         add(bottomPanel, BorderLayout.SOUTH);
     }
 
+    private void analyzeEdit(Document document, int offset, int removed, int inserted) {
+        analysis.update(new DocumentText(document), offset, removed, inserted);
+        tokenModel.fireTableDataChanged();
+        checkTimer.restart();
+    }
+
+    private void showProblems() {
+        List<IncrementalAnalysis.Problem> problems = analysis.check();
+        if (problems.isEmpty()) {
+            problemsLabel.setText("No problems");
+            problemsLabel.setToolTipText(null);
+            return;
+        }
+        problemsLabel.setText(problems.size() + (problems.size() == 1 ? " problem: " : " problems, first: ") + problems.get(0));
+        StringBuilder tip = new StringBuilder("<html>");
+        for (int i = 0; i < Math.min(problems.size(), 20); i++) {
+            tip.append(escapeHtml(problems.get(i).toString())).append("<br>");
+        }
+        if (problems.size() > 20) tip.append("...");
+        problemsLabel.setToolTipText(tip.toString());
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // The table reads the analysis directly, so it stays current as the code is edited
     private void performLexicalAnalysis() {
-        String code = codeEditor.getText();
-        List<LexicalAnalyzer.Token> tokens = LexicalAnalyzer.analyze(code);
-        
-        StringBuilder result = new StringBuilder("=== LEXICAL ANALYSIS ===\n");
-        result.append(String.format("%-12s: %s\n", "TOKEN TYPE", "VALUE"));
-        result.append("----------------------------\n");
-        
-        for (LexicalAnalyzer.Token token : tokens) {
-            result.append(token).append("\n");
+        ((CardLayout) outputCards.getLayout()).show(outputCards, TOKENS);
+    }
+
+    private void showProfile() {
+        ((CardLayout) outputCards.getLayout()).show(outputCards, PROFILE);
+    }
+
+    private void appendConsole(String text) {
+        console.append(text);
+        int width = console.longestLine() * consoleList.getFontMetrics(consoleList.getFont()).charWidth('m') + 8;
+        if (width > consoleList.getFixedCellWidth()) {
+            consoleList.setFixedCellWidth(width);
         }
-        
-        outputArea.setText(result.toString());
     }
 
     private void toggleTheme() {
@@ -109,15 +215,28 @@ public class CompilerUI extends JFrame {
             codeEditor.setBackground(darkPanel);
             codeEditor.setForeground(darkText);
             codeEditor.setCaretColor(Color.WHITE);
-            outputArea.setBackground(darkPanel);
-            outputArea.setForeground(darkText);
+            consoleList.setBackground(darkPanel);
+            consoleList.setForeground(darkText);
+            tokenTable.setBackground(darkPanel);
+            tokenTable.setForeground(darkText);
+            tokenTable.setGridColor(darkBg);
+            profileTable.setBackground(darkPanel);
+            profileTable.setForeground(darkText);
+            profileTable.setGridColor(darkBg);
 
             runButton.setBackground(accent);
             runButton.setForeground(Color.WHITE);
+            stopButton.setBackground(new Color(70, 70, 70));
+            stopButton.setForeground(Color.WHITE);
+            statusLabel.setForeground(darkText);
+            problemsLabel.setForeground(darkText);
             helpButton.setBackground(new Color(70, 70, 70));
             helpButton.setForeground(Color.WHITE);
             lexButton.setBackground(new Color(70, 70, 70));
             lexButton.setForeground(Color.WHITE);
+            profileButton.setBackground(new Color(70, 70, 70));
+            profileButton.setForeground(Color.WHITE);
+            profileRuns.setForeground(darkText);
             
             themeToggleButton.setText("☀");
             themeToggleButton.setBackground(new Color(70, 70, 70));
@@ -133,15 +252,28 @@ public class CompilerUI extends JFrame {
             codeEditor.setBackground(lightPanel);
             codeEditor.setForeground(lightText);
             codeEditor.setCaretColor(Color.BLACK);
-            outputArea.setBackground(lightPanel);
-            outputArea.setForeground(lightText);
+            consoleList.setBackground(lightPanel);
+            consoleList.setForeground(lightText);
+            tokenTable.setBackground(lightPanel);
+            tokenTable.setForeground(lightText);
+            tokenTable.setGridColor(lightBg);
+            profileTable.setBackground(lightPanel);
+            profileTable.setForeground(lightText);
+            profileTable.setGridColor(lightBg);
 
             runButton.setBackground(accent);
             runButton.setForeground(Color.WHITE);
+            stopButton.setBackground(new Color(200, 200, 200));
+            stopButton.setForeground(lightText);
+            statusLabel.setForeground(lightText);
+            problemsLabel.setForeground(lightText);
             helpButton.setBackground(new Color(200, 200, 200));
             helpButton.setForeground(lightText);
             lexButton.setBackground(new Color(200, 200, 200));
             lexButton.setForeground(lightText);
+            profileButton.setBackground(new Color(200, 200, 200));
+            profileButton.setForeground(lightText);
+            profileRuns.setForeground(lightText);
             
             themeToggleButton.setText("🌙");
             themeToggleButton.setBackground(new Color(200, 200, 200));
@@ -183,398 +315,263 @@ public class CompilerUI extends JFrame {
     }
 
     private void executeCode(ActionEvent e) {
-        String userCode = codeEditor.getText().trim();
-        try {
-            String result = compiler.analyzeAndExecute(userCode);
-            outputArea.setText(result);
-        } catch (Exception ex) {
-            outputArea.setText("Error: " + ex.getMessage());
+        if (currentRun != null) {
+            return;
         }
+        console.clear();
+        consoleList.setFixedCellWidth(1);
+        ((CardLayout) outputCards.getLayout()).show(outputCards, CONSOLE);
+        runButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        // Built from the statements the analysis already has; only the checking is redone, by the worker
+        Profile profile = profileRuns.isSelected() ? new Profile() : null;
+        currentRun = new ProgramRun(analysis.snapshot(), profile);
+        currentRun.execute();
     }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new CompilerUI());
+    private void stopExecution() {
+        if (currentRun != null) {
+            currentRun.cancel(true);
+        }
     }
-}
-class JavaSubsetCompiler {
-    private Map<String, Integer> intVariables = new HashMap<>();
-    private Map<String, String> stringVariables = new HashMap<>();
-    private Map<String, Double> doubleVariables = new HashMap<>();
-    private Map<String, Boolean> booleanVariables = new HashMap<>();
 
-    public String analyzeAndExecute(String code) {
-        code = code.replaceAll("/\\.?\\*/", "");
-        String[] lines = code.split("\\n");
-        StringBuilder output = new StringBuilder();
+    // Compiles and runs the program on a worker thread, from statements the editor no longer touches.
+    // Output is handed to the EDT in chunks at the program's checkpoints, at most every
+    // FLUSH_INTERVAL_MS, and the status line shows elapsed time.
+    private class ProgramRun extends SwingWorker<String, String> implements ExecutionMonitor {
+        private static final long FLUSH_INTERVAL_MS = 50;
+
+        private final List<Ast.Stmt> statements;
+        private final Profile profile;
+        private final long started = System.nanoTime();
+        private final javax.swing.Timer clock = new javax.swing.Timer(100, e -> showStatus("Running"));
+        private long lastFlush = started;
+        private boolean published;
+
+        ProgramRun(List<Ast.Stmt> statements, Profile profile) {
+            this.statements = statements;
+            this.profile = profile;
+            showStatus("Running");
+            clock.start();
+        }
 
-        for (String line : lines) {
-            line = line.replaceAll("//.*", "").trim();
-            if (line.isEmpty()) continue;
+        @Override
+        protected String doInBackground() {
+            Ast.Program program = compiler.compile(statements, profile);
+            StringBuilder output = new StringBuilder();
+            compiler.execute(program, output, this);
+            return output.toString();
+        }
 
-            try {
-                if (line.matches("int\\s+\\w+\\s*=\\s*\\w+\\(.\\)\\s;")) {
-                    handleFunctionAssignment(line, output, "int");
-                }
-                else if (line.matches("double\\s+\\w+\\s*=\\s*\\w+\\(.\\)\\s;")) {
-                    handleFunctionAssignment(line, output, "double");
-                }
-                else if (line.matches("boolean\\s+\\w+\\s*=\\s*(true|false)\\s*;")) {
-                    processBooleanDeclaration(line);
-                }
-                else if (line.matches("(int|double|String)\\s+\\w+\\s*=\\s*.+;")) {
-                    processVariableDeclaration(line);
-                }
-                else if (line.matches("(System\\.out\\.println|print)\\(.*\\);")) {
-                    output.append(processPrintStatement(line)).append("\n");
-                }
-                else if (line.matches("\\w+\\(.*\\);")) {
-                    String result = executeFunctionCall(line);
-                    if (!result.isEmpty()) {
-                        output.append(result).append("\n");
-                    }
-                }
-                else if (line.matches("\\w+\\s*=\\s*.+;")) {
-                    processAssignment(line);
-                }
-                else {
-                    output.append("Syntax Error: Unsupported statement → ").append(line).append("\n");
-                }
-            } catch (RuntimeException e) {
-                output.append(e.getMessage()).append("\n");
+        @Override
+        public void checkpoint(StringBuilder output) {
+            if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Stopped");
             }
-        }
-        return output.toString().trim();
-    }
-     
-    private void processBooleanDeclaration(String line) {
-        Pattern pattern = Pattern.compile("boolean\\s+(\\w+)\\s*=\\s*(true|false)\\s*;");
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            String varName = matcher.group(1);
-            boolean value = Boolean.parseBoolean(matcher.group(2));
-            booleanVariables.put(varName, value);
-        }
-    }
-    private String evaluatePrintExpression(String expr) {
-        // Handle string concatenation with function calls
-        if (expr.contains("+")) {
-            String[] parts = expr.split("\\+");
-            StringBuilder result = new StringBuilder();
-            for (String part : parts) {
-                result.append(processPrintStatement("print(" + part.trim() + ");"));
+            long now = System.nanoTime();
+            if (now - lastFlush < FLUSH_INTERVAL_MS * 1_000_000) {
+                return;
+            }
+            lastFlush = now;
+            // Trailing line breaks are held back so the final output ends without one, as before
+            int end = output.length();
+            while (end > 0 && output.charAt(end - 1) == '\n') end--;
+            if (end > 0) {
+                publish(output.substring(0, end));
+                output.delete(0, end);
             }
-            return result.toString();
         }
-        return processPrintStatement("print(" + expr + ");");
-    }
-    private void handleFunctionAssignment(String line, StringBuilder output, String type) {
-        Pattern p = Pattern.compile("(" + type + ")\\s+(\\w+)\\s*=\\s*(\\w+\\(.\\))\\s;");
-        Matcher m = p.matcher(line);
-        if (m.matches()) {
-            String varName = m.group(2);
-            String funcCall = m.group(3);
-            try {
-                Object result = executeFunctionAndGetValue(funcCall + ";");
-                if (type.equals("int")) {
-                    if (result instanceof Number) {
-                        intVariables.put(varName, ((Number)result).intValue());
-                    } else {
-                        output.append("Error: Function must return a number for int assignment\n");
-                    }
-                } 
-                else if (type.equals("double")) {
-                    if (result instanceof Number) {
-                        doubleVariables.put(varName, ((Number)result).doubleValue());
-                    } else {
-                        output.append("Error: Function must return a number for double assignment\n");
-                    }
-                }
-            } catch (Exception e) {
-                output.append("Error: ").append(e.getMessage()).append("\n");
+
+        @Override
+        protected void process(List<String> chunks) {
+            for (String chunk : chunks) {
+                appendOutput(chunk);
             }
         }
-    }
 
-    private Object executeFunctionAndGetValue(String line) throws Exception {
-        Pattern pattern = Pattern.compile("(\\w+)\\(([^)]*)\\);");
-        Matcher matcher = pattern.matcher(line.replaceAll("\\s+", ""));
-        
-        if (matcher.matches()) {
-            String functionName = matcher.group(1);
-            String argsString = matcher.group(2);
-            String[] rawArgs = argsString.isEmpty() ? new String[0] : argsString.split(",");
-            
-            Object[] evaluatedArgs = new Object[rawArgs.length];
-            Class<?>[] paramTypes = new Class[rawArgs.length];
-            
-            for (int i = 0; i < rawArgs.length; i++) {
-                String arg = rawArgs[i].trim();
-                
-                if (intVariables.containsKey(arg)) {
-                    evaluatedArgs[i] = intVariables.get(arg);
-                    paramTypes[i] = int.class;
-                }
-                else if (doubleVariables.containsKey(arg)) {
-                    evaluatedArgs[i] = doubleVariables.get(arg);
-                    paramTypes[i] = double.class;
-                }
-                else if (arg.matches("-?\\d+")) {
-                    evaluatedArgs[i] = Integer.parseInt(arg);
-                    paramTypes[i] = int.class;
-                }
-                else if (arg.matches("-?\\d+\\.\\d+")) {
-                    evaluatedArgs[i] = Double.parseDouble(arg);
-                    paramTypes[i] = double.class;
-                }
-                else if (arg.startsWith("\"") && arg.endsWith("\"")) {
-                    evaluatedArgs[i] = arg.substring(1, arg.length() - 1);
-                    paramTypes[i] = String.class;
-                }
-                else if (stringVariables.containsKey(arg)) {
-                    evaluatedArgs[i] = stringVariables.get(arg);
-                    paramTypes[i] = String.class;
-                }
-                else {
-                    throw new RuntimeException("Invalid argument: " + arg);
-                }
+        @Override
+        protected void done() {
+            clock.stop();
+            currentRun = null;
+            if (profile != null) {
+                // Also after a stopped or failed run, which is often the one worth looking at
+                profileModel.show(profile);
             }
-            
-            // Try exact parameter types first
+            runButton.setEnabled(true);
+            stopButton.setEnabled(false);
             try {
-                Method method = CustomFunctions.class.getMethod(functionName, paramTypes);
-                return method.invoke(null, evaluatedArgs);
-            } catch (NoSuchMethodException e) {
-                // Try converting int parameters to double
-                Class<?>[] altParamTypes = new Class[paramTypes.length];
-                for (int i = 0; i < paramTypes.length; i++) {
-                    if (paramTypes[i] == int.class) {
-                        altParamTypes[i] = double.class;
-                        evaluatedArgs[i] = ((Integer)evaluatedArgs[i]).doubleValue();
-                    } else {
-                        altParamTypes[i] = paramTypes[i];
-                    }
-                }
-                
-                try {
-                    Method method = CustomFunctions.class.getMethod(functionName, altParamTypes);
-                    return method.invoke(null, evaluatedArgs);
-                } catch (NoSuchMethodException ex) {
-                    throw new NoSuchMethodException("Function '" + functionName + 
-                        "' with these parameter types not found");
-                }
+                appendOutput(get());
+                showStatus("Finished in");
+            } catch (CancellationException ex) {
+                appendOutput("\nStopped");
+                showStatus("Stopped after");
+            } catch (ExecutionException ex) {
+                appendOutput("\nError: " + ex.getCause().getMessage());
+                showStatus("Failed after");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
         }
-        throw new RuntimeException("Invalid function call: " + line);
-    }
 
-    private void processVariableDeclaration(String line) {
-        Pattern pattern = Pattern.compile("(int|double|String)\\s+(\\w+)\\s*=\\s*(.+);");
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            String type = matcher.group(1);
-            String varName = matcher.group(2);
-            String value = matcher.group(3).trim();
-
-            if (type.equals("int")) {
-                if (value.matches("-?\\d+")) {
-                    intVariables.put(varName, Integer.parseInt(value));
-                } else {
-                    throw new RuntimeException("Invalid integer value: " + value);
-                }
-            } 
-            else if (type.equals("double")) {
-                if (value.matches("-?\\d+(\\.\\d+)?")) {
-                    doubleVariables.put(varName, Double.parseDouble(value));
-                } else {
-                    throw new RuntimeException("Invalid double value: " + value);
-                }
+        // The first chunk loses its leading whitespace and the last its trailing whitespace, like trim()
+        private void appendOutput(String text) {
+            if (!published) {
+                text = text.stripLeading();
+                published = !text.isEmpty();
             }
-            else if (type.equals("String")) {
-                if (value.matches("\".*\"")) {
-                    stringVariables.put(varName, value.substring(1, value.length() - 1));
-                } else {
-                    throw new RuntimeException("Invalid string value: " + value);
-                }
+            appendConsole(text);
+            if (isDone()) {
+                console.trimTrailingWhitespace();
             }
         }
-    }
 
-    private String processPrintStatement(String line) {
-        Pattern pattern = Pattern.compile("(System\\.out\\.println|print)\\((.+)\\);");
-        Matcher matcher = pattern.matcher(line);
-        
-        if (matcher.matches()) {
-            String value = matcher.group(2).trim();
-        
-            // Handle string literals
-            if (value.startsWith("\"") && value.endsWith("\"")) {
-                return value.substring(1, value.length() - 1);
-            }
-            
-            // Handle expressions with concatenation
-            if (value.contains("+")) {
-                return evaluatePrintExpression(value);
-            }
-            
-            // Handle function calls
-            if (value.matches("\\w+\\(.*\\)")) {
-                try {
-                    Object result = executeFunctionAndGetValue(value + ";");
-                    if (result instanceof Boolean) {
-                        return result.toString();
-                    } else if (result instanceof Number) {
-                        return String.valueOf(result);
-                    }
-                    return String.valueOf(result);
-                } catch (Exception e) {
-                    return "Error: " + e.getMessage();
-                }
-            }
-            
-            // Handle variables
-            if (booleanVariables.containsKey(value)) {
-                return String.valueOf(booleanVariables.get(value));
-            }
-            if (intVariables.containsKey(value)) {
-                return String.valueOf(intVariables.get(value));
-            }
-            if (doubleVariables.containsKey(value)) {
-                return String.valueOf(doubleVariables.get(value));
-            }
-            if (stringVariables.containsKey(value)) {
-                return stringVariables.get(value);
-            }
-            
-            // Handle direct values
-            if (value.equals("true") || value.equals("false")) {
-                return value;
-            }
-            
-            try {
-                return String.valueOf(evaluateExpression(value));
-            } catch (Exception e) {
-                return "Error: Cannot evaluate " + value;
+        private void showStatus(String state) {
+            String status = String.format("%s %.1f s", state, (System.nanoTime() - started) / 1e9);
+            if (console.dropped() > 0) {
+                status += String.format(" (showing the last %,d lines)", CONSOLE_LINES);
             }
+            statusLabel.setText(status);
         }
-        return "Error: Invalid print statement";
     }
-    
-    
-    private String executeFunctionCall(String line) {
-        try {
-            Object result = executeFunctionAndGetValue(line);
-            return result != null ? result.toString() : "";
-        } catch (Exception e) {
-            return "Error: " + e.getMessage();
+
+    // Token rows formatted when the table paints them
+    private class TokenTableModel extends AbstractTableModel {
+        private final String[] columns = {"Type", "Value", "Line", "Column"};
+
+        @Override
+        public int getRowCount() {
+            return analysis.tokenCount();
         }
-    }
 
-    private void processAssignment(String line) {
-        Pattern pattern = Pattern.compile("(\\w+)\\s*=\\s*(.+);");
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.matches()) {
-            String varName = matcher.group(1);
-            String value = matcher.group(2).trim();
-
-            if (intVariables.containsKey(varName)) {
-                intVariables.put(varName, evaluateExpression(value));
-            } 
-            else if (doubleVariables.containsKey(varName)) {
-                try {
-                    doubleVariables.put(varName, Double.parseDouble(value));
-                } catch (NumberFormatException e) {
-                    throw new RuntimeException("Invalid double value: " + value);
-                }
-            }
-            else if (stringVariables.containsKey(varName)) {
-                if (value.matches("\".*\"")) {
-                    stringVariables.put(varName, value.substring(1, value.length() - 1));
-                } else {
-                    throw new RuntimeException("Invalid string assignment");
-                }
-            }
-            else {
-                throw new RuntimeException("Error: Undefined variable → " + varName);
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            LexicalAnalyzer.Token token = analysis.token(row);
+            switch (column) {
+                case 0: return token.type;
+                case 1: return token.value.replace("\n", "\\n");
+                case 2: return token.line;
+                default: return token.column;
             }
         }
     }
 
-    private int evaluateExpression(String expression) {
-        try {
-            expression = expression.replaceAll("\\s+", "");
+    // Phases, then lines, then builtins, as recorded; the table sorts by any column
+    private static class ProfileTableModel extends AbstractTableModel {
+        private final String[] columns = {"Kind", "Name", "Count", "Time (ms)", "Allocated (KB)"};
+        private final List<String> kinds = new ArrayList<>();
+        private final List<Profile.Counter> counters = new ArrayList<>();
+
+        void show(Profile profile) {
+            kinds.clear();
+            counters.clear();
+            add("Phase", profile.phases());
+            add("Statement", profile.lines());
+            add("Builtin", profile.builtins());
+            fireTableDataChanged();
+        }
 
-            for (String var : intVariables.keySet()) {
-                expression = expression.replace(var, intVariables.get(var).toString());
+        private void add(String kind, List<Profile.Counter> rows) {
+            for (Profile.Counter counter : rows) {
+                kinds.add(kind);
+                counters.add(counter);
             }
+        }
 
-            return eval(expression);
-        } catch (Exception e) {
-            throw new RuntimeException("Error: Invalid arithmetic expression → " + expression);
+        @Override
+        public int getRowCount() {
+            return counters.size();
         }
-    }
 
-    private int eval(String expr) {
-        return new Object() {
-            int pos = -1, ch;
-    
-            void nextChar() {
-                ch = (++pos < expr.length()) ? expr.charAt(pos) : -1;
-            }
-    
-            int parse() {
-                nextChar();
-                return parseExpression();
-            }
-    
-            int parseExpression() {
-                int x = parseTerm();
-                while (ch == '+' || ch == '-') {
-                    int op = ch;
-                    nextChar();
-                    x = (op == '+') ? x + parseTerm() : x - parseTerm();
-                }
-                return x;
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 2: case 4: return Long.class;
+                case 3: return Double.class;
+                default: return String.class;
             }
-    
-            int parseTerm() {
-                int x = parseFactor();
-                while (ch == '*' || ch == '/') {
-                    int op = ch;
-                    nextChar();
-                    x = (op == '*') ? x * parseFactor() : x / parseFactor();
-                }
-                return x;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Profile.Counter counter = counters.get(row);
+            switch (column) {
+                case 0: return kinds.get(row);
+                case 1: return counter.name;
+                case 2: return counter.count;
+                case 3: return counter.nanos / 1e6;
+                default: return counter.bytes / 1024;
             }
-    
-            int parseFactor() {
-                int x;
-                if (ch == '(') {
-                    nextChar();
-                    x = parseExpression();
-                    if (ch == ')') nextChar();
-                } else {
-                    x = parseNumber();
+        }
+    }
+
+    // The editor's document as a CharSequence for the lexer, read through a Segment a chunk at a time
+    // instead of copying the whole text on every keystroke
+    private static final class DocumentText implements CharSequence {
+        private static final int CHUNK = 4096;
+
+        private final Document document;
+        private final Segment chunk = new Segment();
+        private int chunkStart;
+
+        DocumentText(Document document) {
+            this.document = document;
+            chunk.setPartialReturn(true);
+        }
+
+        @Override
+        public int length() {
+            return document.getLength();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < chunkStart || index >= chunkStart + chunk.count) {
+                try {
+                    document.getText(index, Math.min(CHUNK, document.getLength() - index), chunk);
+                } catch (BadLocationException e) {
+                    throw new IndexOutOfBoundsException(index);
                 }
-                return x;
+                chunkStart = index;
             }
-    
-            int parseNumber() {
-                int x = 0;
-                boolean negative = false;
-    
-                if (ch == '-') {
-                    negative = true;
-                    nextChar();
-                }
-    
-                if (Character.isDigit(ch)) {
-                    while (Character.isDigit(ch)) {
-                        x = x * 10 + (ch - '0');
-                        nextChar();
-                    }
-                }
-                return negative ? -x : x;
+            return chunk.array[chunk.offset + index - chunkStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            try {
+                return document.getText(start, end - start);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException(start);
             }
-        }.parse();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(() -> new CompilerUI());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+import java.util.Arrays;
+import javax.swing.AbstractListModel;
+
+// Program output as list rows for a JList, keeping only the last capacity lines in a ring buffer. The
+// list formats and paints just the rows in view, so neither memory nor repaint cost grows with the
+// amount of output.
+final class ConsoleModel extends AbstractListModel<String> {
+    private final String[] lines;
+    private int head; // ring index of the oldest line
+    private int size;
+    private final StringBuilder open = new StringBuilder(); // last line, not ended by '\n' yet
+    private long dropped;
+    private int longest; // in chars, for the list's fixed cell width
+
+    ConsoleModel(int capacity) {
+        lines = new String[capacity];
+    }
+
+    @Override
+    public int getSize() {
+        return size + (open.length() > 0 ? 1 : 0);
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return index < size ? lines[(head + index) % lines.length] : open.toString();
+    }
+
+    // Lines pushed out of the buffer since the last clear
+    long dropped() {
+        return dropped;
+    }
+
+    int longestLine() {
+        return longest;
+    }
+
+    void append(CharSequence text) {
+        if (text.length() == 0) return;
+        int oldRows = getSize();
+        long droppedBefore = dropped;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                open.append(text, start, i);
+                push(open.toString());
+                open.setLength(0);
+                start = i + 1;
+            }
+        }
+        open.append(text, start, text.length());
+        longest = Math.max(longest, open.length());
+
+        int removed = (int) Math.min(dropped - droppedBefore, oldRows);
+        int kept = oldRows - removed;
+        int rows = getSize();
+        if (removed > 0) fireIntervalRemoved(this, 0, removed - 1);
+        // The row that was open may have grown
+        if (kept > 0) fireContentsChanged(this, kept - 1, kept - 1);
+        if (rows > kept) fireIntervalAdded(this, kept, rows - 1);
+    }
+
+    private void push(String line) {
+        longest = Math.max(longest, line.length());
+        if (size == lines.length) {
+            lines[head] = line;
+            head = (head + 1) % lines.length;
+            dropped++;
+        } else {
+            lines[(head + size) % lines.length] = line;
+            size++;
+        }
+    }
+
+    // Drops trailing blank lines and whitespace, as String.trim() does at the end
+    void trimTrailingWhitespace() {
+        int oldRows = getSize();
+        if (open.toString().isBlank()) {
+            open.setLength(0);
+            while (size > 0 && getElementAt(size - 1).isBlank()) {
+                lines[(head + --size) % lines.length] = null;
+            }
+            if (size > 0) {
+                int last = (head + size - 1) % lines.length;
+                lines[last] = lines[last].stripTrailing();
+            }
+        } else {
+            int end = open.length();
+            while (Character.isWhitespace(open.charAt(end - 1))) end--;
+            open.setLength(end);
+        }
+        int rows = getSize();
+        if (rows < oldRows) fireIntervalRemoved(this, rows, oldRows - 1);
+        if (rows > 0) fireContentsChanged(this, rows - 1, rows - 1);
+    }
+
+    void clear() {
+        int oldRows = getSize();
+        Arrays.fill(lines, null);
+        head = size = 0;
+        open.setLength(0);
+        dropped = 0;
+        longest = 0;
+        if (oldRows > 0) fireIntervalRemoved(this, 0, oldRows - 1);
+    }
+}
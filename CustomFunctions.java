@@ -1,6 +1,15 @@
 import java.io.*;
 import java.lang.Math;
 import java.awt.Desktop;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 
 
 public class CustomFunctions {
@@ -11,72 +20,458 @@ public class CustomFunctions {
     }
    
     
-    // String operations
-    public static String concat(String s1, String s2) { return s1 + s2; }
-    public static int len(String s) { return s.length(); }
-    public static String toUpperCase(String s) { return s.toUpperCase(); }
-    public static String toLowerCase(String s) { return s.toLowerCase(); }
-    public static String replace(String s, String oldChar, String newChar) { return s.replace(oldChar, newChar); }
-    public static char charAt(String s, int index) { return s.charAt(index); }
-    public static boolean equals(String s1, String s2) { return s1.equals(s2); }
-    public static boolean equalsIgnoreCase(String s1, String s2) { return s1.equalsIgnoreCase(s2); }
-    public static boolean contains(String s, String substring) { return s.contains(substring); }
-    public static boolean startsWith(String s, String prefix) { return s.startsWith(prefix); }
-    public static boolean endsWith(String s, String suffix) { return s.endsWith(suffix); }
-    public static String[] split(String s, String regex) { return s.split(regex); }
-    public static String toString(Object obj) { return String.valueOf(obj); }
-    public static String reverseString(String s) {
+    // String operations. @Pure marks builtins the compiler may evaluate ahead of time.
+    @Pure public static String concat(String s1, String s2) { return s1 + s2; }
+    // CharSequence parameters also accept a GrowingString without flattening it
+    @Pure public static int len(CharSequence s) { return s.length(); }
+    @Pure public static String toUpperCase(String s) { return s.toUpperCase(); }
+    @Pure public static String toLowerCase(String s) { return s.toLowerCase(); }
+    @Pure public static String replace(CharSequence s, String oldChar, String newChar) {
+        if (s instanceof GrowingString) return ((GrowingString) s).replace(oldChar, newChar);
+        return s.toString().replace(oldChar, newChar);
+    }
+    @Pure public static char charAt(CharSequence s, int index) { return s.charAt(index); }
+    @Pure public static boolean equals(String s1, String s2) { return s1.equals(s2); }
+    @Pure public static boolean equalsIgnoreCase(String s1, String s2) { return s1.equalsIgnoreCase(s2); }
+    @Pure public static boolean contains(CharSequence s, String substring) {
+        if (s instanceof GrowingString) return ((GrowingString) s).indexOf(substring) >= 0;
+        return s.toString().contains(substring);
+    }
+    @Pure public static boolean startsWith(String s, String prefix) { return s.startsWith(prefix); }
+    @Pure public static boolean endsWith(String s, String suffix) { return s.endsWith(suffix); }
+    @Pure public static String[] split(String s, String regex) { return s.split(regex); }
+    @Pure public static String toString(Object obj) { return String.valueOf(obj); }
+    @Pure public static String reverseString(String s) {
         return new StringBuilder(s).reverse().toString();
     }
 
     // Math operations
-    public static int add(int a, int b) { return a + b; }
-    public static int subtract(int a, int b) { return a - b; }
-    public static int multiply(int a, int b) { return a * b; }
+    @Pure public static int add(int a, int b) { return a + b; }
+    @Pure public static int subtract(int a, int b) { return a - b; }
+    @Pure public static int multiply(int a, int b) { return a * b; }
     
-    public static double divide(int a, int b) {
+    @Pure public static double divide(int a, int b) {
         return (b == 0) ? (a == 0 ? Double.NaN : Double.POSITIVE_INFINITY) : (double)a / b;
     }
-    public static int modulus(int a, int b) { return a % b; }
-    public static int max(int a, int b) { return Math.max(a, b); }
-    public static int min(int a, int b) { return Math.min(a, b); }
-    public static double power(double base, double exp) { return Math.pow(base, exp); }
-    public static double absoluteValue(double num) { return Math.abs(num); }
-    public static double round(double num) { return Math.round(num); }
-    public static double floor(double num) { return Math.floor(num); }
-    public static double ceil(double num) { return Math.ceil(num); }
-    public static double log(double num) { return Math.log(num); }
-    public static double sqrt(double num) { return Math.sqrt(num); }
-    public static double cbrt(double num) { return Math.cbrt(num); }
-    public static double sin(double num) { return Math.sin(num); }
-    public static double cos(double num) { return Math.cos(num); }
-    public static double tan(double num) { return Math.tan(num); }
-
-    // File operations
+    @Pure public static int modulus(int a, int b) { return a % b; }
+    @Pure public static int max(int a, int b) { return Math.max(a, b); }
+    @Pure public static int min(int a, int b) { return Math.min(a, b); }
+    @Pure public static double power(double base, double exp) { return Math.pow(base, exp); }
+    @Pure public static double absoluteValue(double num) { return Math.abs(num); }
+    @Pure public static double round(double num) { return Math.round(num); }
+    @Pure public static double floor(double num) { return Math.floor(num); }
+    @Pure public static double ceil(double num) { return Math.ceil(num); }
+    @Pure public static double log(double num) { return Math.log(num); }
+    @Pure public static double sqrt(double num) { return Math.sqrt(num); }
+    @Pure public static double cbrt(double num) { return Math.cbrt(num); }
+    @Pure public static double sin(double num) { return Math.sin(num); }
+    @Pure public static double cos(double num) { return Math.cos(num); }
+    @Pure public static double tan(double num) { return Math.tan(num); }
+
+    // Arrays. Scripts hold int[] and double[] values and work on them a whole array per call, so a
+    // dataset costs one builtin call rather than one per element. The loops are plain counted loops
+    // over primitive arrays, which the JIT compiles to SIMD instructions where the CPU has them.
+    // Element-wise operations return a new array; arrays of different lengths are an error.
+    public static int[] intArray(int length) { return new int[checkLength(length)]; }
+    public static double[] doubleArray(int length) { return new double[checkLength(length)]; }
+    public static int[] fill(int length, int value) {
+        int[] result = new int[checkLength(length)];
+        Arrays.fill(result, value);
+        return result;
+    }
+    public static double[] fill(int length, double value) {
+        double[] result = new double[checkLength(length)];
+        Arrays.fill(result, value);
+        return result;
+    }
+    // 0, 1, ..., end - 1
+    public static int[] range(int end) { return range(0, end); }
+    public static int[] range(int start, int end) {
+        int[] result = new int[Math.max(0, end - start)];
+        for (int i = 0; i < result.length; i++) result[i] = start + i;
+        return result;
+    }
+    public static double[] toDoubles(int[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = a[i];
+        return result;
+    }
+    // Numbers separated by a regex, such as "," or "\s+"; empty fields are skipped
+    public static double[] parseDoubles(String text, String separator) {
+        String[] fields = text.trim().split(separator);
+        double[] result = new double[fields.length];
+        int count = 0;
+        for (String field : fields) {
+            field = field.trim();
+            if (field.isEmpty()) continue;
+            try {
+                result[count++] = Double.parseDouble(field);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + field);
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    public static int[] copy(int[] a) { return a.clone(); }
+    public static double[] copy(double[] a) { return a.clone(); }
+    public static int len(int[] a) { return a.length; }
+    public static int len(double[] a) { return a.length; }
+    public static int get(int[] a, int index) { return a[index]; }
+    public static double get(double[] a, int index) { return a[index]; }
+    public static void set(int[] a, int index, int value) { a[index] = value; }
+    public static void set(double[] a, int index, double value) { a[index] = value; }
+    public static String toString(int[] a) { return Arrays.toString(a); }
+    public static String toString(double[] a) { return Arrays.toString(a); }
+
+    public static int[] add(int[] a, int[] b) {
+        int[] result = new int[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] + b[i];
+        return result;
+    }
+    public static double[] add(double[] a, double[] b) {
+        double[] result = new double[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] + b[i];
+        return result;
+    }
+    public static int[] add(int[] a, int b) {
+        int[] result = new int[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] + b;
+        return result;
+    }
+    public static double[] add(double[] a, double b) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] + b;
+        return result;
+    }
+    public static int[] subtract(int[] a, int[] b) {
+        int[] result = new int[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] - b[i];
+        return result;
+    }
+    public static double[] subtract(double[] a, double[] b) {
+        double[] result = new double[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] - b[i];
+        return result;
+    }
+    public static int[] subtract(int[] a, int b) {
+        int[] result = new int[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] - b;
+        return result;
+    }
+    public static double[] subtract(double[] a, double b) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] - b;
+        return result;
+    }
+    public static int[] multiply(int[] a, int[] b) {
+        int[] result = new int[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] * b[i];
+        return result;
+    }
+    public static double[] multiply(double[] a, double[] b) {
+        double[] result = new double[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] * b[i];
+        return result;
+    }
+    public static int[] multiply(int[] a, int b) {
+        int[] result = new int[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] * b;
+        return result;
+    }
+    public static double[] multiply(double[] a, double b) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] * b;
+        return result;
+    }
+    public static double[] divide(double[] a, double[] b) {
+        double[] result = new double[sameLength(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] / b[i];
+        return result;
+    }
+    public static double[] divide(double[] a, double b) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < result.length; i++) result[i] = a[i] / b;
+        return result;
+    }
+
+    public static int sum(int[] a) {
+        int sum = 0;
+        for (int value : a) sum += value;
+        return sum;
+    }
+    // Four running sums break the chain of dependent additions, as a vector unit would; the result
+    // can differ from a left-to-right sum in the last bits
+    public static double sum(double[] a) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < a.length; i++) s0 += a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+    // Added up in a long, so the mean of large values does not wrap around as sum(int[]) does
+    public static double mean(int[] a) {
+        long sum = 0;
+        for (int value : a) sum += value;
+        return (double) sum / nonEmpty(a.length, "mean");
+    }
+    public static double mean(double[] a) { return sum(a) / nonEmpty(a.length, "mean"); }
+    public static int dot(int[] a, int[] b) {
+        int sum = 0;
+        for (int i = 0, n = sameLength(a.length, b.length); i < n; i++) sum += a[i] * b[i];
+        return sum;
+    }
+    public static double dot(double[] a, double[] b) {
+        int n = sameLength(a.length, b.length);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < n; i++) s0 += a[i] * b[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+    public static int min(int[] a) {
+        nonEmpty(a.length, "min");
+        int min = a[0];
+        for (int value : a) min = Math.min(min, value);
+        return min;
+    }
+    public static double min(double[] a) {
+        nonEmpty(a.length, "min");
+        double min = a[0];
+        for (double value : a) min = Math.min(min, value);
+        return min;
+    }
+    public static int max(int[] a) {
+        nonEmpty(a.length, "max");
+        int max = a[0];
+        for (int value : a) max = Math.max(max, value);
+        return max;
+    }
+    public static double max(double[] a) {
+        nonEmpty(a.length, "max");
+        double max = a[0];
+        for (double value : a) max = Math.max(max, value);
+        return max;
+    }
+
+    // The math functions applied to every element
+    public static double[] power(double[] a, double exp) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.pow(a[i], exp);
+        return result;
+    }
+    public static double[] absoluteValue(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.abs(a[i]);
+        return result;
+    }
+    public static double[] round(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.round(a[i]);
+        return result;
+    }
+    public static double[] floor(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.floor(a[i]);
+        return result;
+    }
+    public static double[] ceil(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.ceil(a[i]);
+        return result;
+    }
+    public static double[] log(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.log(a[i]);
+        return result;
+    }
+    public static double[] sqrt(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.sqrt(a[i]);
+        return result;
+    }
+    public static double[] cbrt(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.cbrt(a[i]);
+        return result;
+    }
+    public static double[] sin(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.sin(a[i]);
+        return result;
+    }
+    public static double[] cos(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.cos(a[i]);
+        return result;
+    }
+    public static double[] tan(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) result[i] = Math.tan(a[i]);
+        return result;
+    }
+
+    private static int checkLength(int length) {
+        if (length < 0) throw new IllegalArgumentException("Negative array length " + length);
+        return length;
+    }
+
+    private static int sameLength(int a, int b) {
+        if (a != b) throw new IllegalArgumentException("Arrays differ in length: " + a + " and " + b);
+        return a;
+    }
+
+    private static int nonEmpty(int length, String operation) {
+        if (length == 0) throw new IllegalArgumentException(operation + " of an empty array");
+        return length;
+    }
+
+    // File operations. Charsets are given by name ("UTF-8", "ISO-8859-1", ...); the default is UTF-8.
     public static boolean exists(String filePath) { return new File(filePath).exists(); }
+
+    // Whole file as a string, exactly as stored. The file is mapped rather than read, so its bytes are
+    // decoded straight from the page cache without an intermediate copy.
     public static String readFile(String filePath) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-        StringBuilder content = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) content.append(line).append("\n");
-        reader.close();
-        return content.toString();
+        return readFile(filePath, "UTF-8");
+    }
+    public static String readFile(String filePath, String charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " is too large for readFile; read it with openReader");
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return charset(charset).decode(bytes).toString();
+        }
     }
     public static void fileWriter(String filePath, String data) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filePath));
+        fileWriter(filePath, data, "UTF-8");
+    }
+    public static void fileWriter(String filePath, String data, String charset) throws IOException {
+        Files.write(Paths.get(filePath), data.getBytes(charset(charset)));
+    }
+    public static void appendFile(String filePath, String data) throws IOException {
+        appendFile(filePath, data, "UTF-8");
+    }
+    public static void appendFile(String filePath, String data, String charset) throws IOException {
+        Files.write(Paths.get(filePath), data.getBytes(charset(charset)),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    // Streaming handles for files of any size. A handle is an int naming a file opened by the current
+    // run; the run closes whatever its script leaves open.
+    public static int openReader(String filePath) throws IOException {
+        return openReader(filePath, "UTF-8");
+    }
+    public static int openReader(String filePath, String charset) throws IOException {
+        return FileHandles.current().open(Files.newBufferedReader(Paths.get(filePath), charset(charset)));
+    }
+    public static int openWriter(String filePath) throws IOException {
+        return openWriter(filePath, false, "UTF-8");
+    }
+    public static int openWriter(String filePath, boolean append) throws IOException {
+        return openWriter(filePath, append, "UTF-8");
+    }
+    public static int openWriter(String filePath, boolean append, String charset) throws IOException {
+        OpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        return FileHandles.current().open(Files.newBufferedWriter(Paths.get(filePath), charset(charset),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode));
+    }
+    // Next line without its terminator; check hasMore first, as "" is also an empty line
+    public static String readLine(int handle) throws IOException {
+        String line = FileHandles.current().reader(handle).readLine();
+        return line != null ? line : "";
+    }
+    // Up to maxChars characters; "" at the end of the file
+    public static String readChunk(int handle, int maxChars) throws IOException {
+        char[] chunk = new char[Math.max(0, Math.min(maxChars, 1 << 20))];
+        int read = FileHandles.current().reader(handle).read(chunk, 0, chunk.length);
+        return read > 0 ? new String(chunk, 0, read) : "";
+    }
+    // Whether a reader has text left, or a directory walk has entries left
+    public static boolean hasMore(int handle) throws IOException {
+        FileHandles files = FileHandles.current();
+        if (files.isWalk(handle)) return files.walk(handle).hasNext();
+        BufferedReader reader = files.reader(handle);
+        reader.mark(1);
+        boolean more = reader.read() != -1;
+        reader.reset();
+        return more;
+    }
+    public static void write(int handle, String data) throws IOException {
+        FileHandles.current().writer(handle).write(data);
+    }
+    public static void writeLine(int handle, String data) throws IOException {
+        BufferedWriter writer = FileHandles.current().writer(handle);
         writer.write(data);
-        writer.close();
+        writer.newLine();
+    }
+    public static void closeFile(int handle) throws IOException {
+        FileHandles.current().close(handle);
+    }
+    // Closes every file the run has open
+    public static void closeFile() throws IOException { FileHandles.current().closeAll(); }
+
+    private static Charset charset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown charset " + name);
+        }
     }
+
     public static void openFile(String filePath) throws IOException {
         Desktop.getDesktop().open(new File(filePath));
     }
-    public static void closeFile() { System.gc(); }  // Simulated close
     public static boolean isEmpty(String filePath) throws IOException {
         return new File(filePath).length() == 0;
     }
     public static long fileLength(String filePath) { return new File(filePath).length(); }
     public static String[] listFiles(String dirPath) { return new File(dirPath).list(); }
 
+    // Lazy walk of everything below a directory, returned as a handle like openReader's. nextFile
+    // advances it; the entry* functions answer from the attributes read with that entry, so a scan
+    // costs one file system call per entry. Entries come in file system order.
+    public static int walkFiles(String dirPath) throws IOException {
+        return walkFiles(dirPath, Integer.MAX_VALUE);
+    }
+    // maxDepth 1 lists the directory itself, 2 its subdirectories too, and so on
+    public static int walkFiles(String dirPath, int maxDepth) throws IOException {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be at least 1");
+        }
+        return FileHandles.current().open(new DirectoryWalk(Paths.get(dirPath), maxDepth));
+    }
+    public static String nextFile(int handle) throws IOException {
+        return FileHandles.current().walk(handle).next().toString();
+    }
+    public static long entrySize(int handle) { return attributes(handle).size(); }
+    public static boolean entryIsDirectory(int handle) { return attributes(handle).isDirectory(); }
+    // Milliseconds since the epoch
+    public static long entryModified(int handle) { return attributes(handle).lastModifiedTime().toMillis(); }
+
+    private static BasicFileAttributes attributes(int handle) {
+        return FileHandles.current().walk(handle).attributes();
+    }
+
+    // Whole-tree totals over regular files, scanned in parallel in a single call
+    public static int countFiles(String dirPath) throws IOException { return countFiles(dirPath, ""); }
+    public static int countFiles(String dirPath, String suffix) throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, DirectoryWalk.scan(Paths.get(dirPath), suffix).files);
+    }
+    public static long directorySize(String dirPath) throws IOException {
+        return DirectoryWalk.scan(Paths.get(dirPath), "").bytes;
+    }
+
     // System properties & file permissions
     public static String getProperty(String key) { return System.getProperty(key); }
     public static void setReadable(String filePath, boolean readable) { new File(filePath).setReadable(readable); }
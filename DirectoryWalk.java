@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Depth-first walk below a directory, one entry at a time. Only the directories on the current path
+// are open, so memory does not grow with the tree, and each entry's attributes come from a single
+// read that the script can then query without touching the file system again. Entries come in the
+// order the file system lists them; links are reported but not followed, and directories that cannot
+// be read are skipped.
+final class DirectoryWalk implements Closeable {
+    private static final class Level {
+        final DirectoryStream<Path> stream;
+        final Iterator<Path> entries;
+
+        Level(DirectoryStream<Path> stream) {
+            this.stream = stream;
+            this.entries = stream.iterator();
+        }
+    }
+
+    private final Deque<Level> open = new ArrayDeque<>();
+    private final int maxDepth;
+    private Path next, current;
+    private BasicFileAttributes nextAttributes, currentAttributes;
+    private boolean looked;
+
+    DirectoryWalk(Path root, int maxDepth) throws IOException {
+        this.maxDepth = maxDepth;
+        open.push(new Level(Files.newDirectoryStream(root)));
+    }
+
+    boolean hasNext() throws IOException {
+        if (!looked) {
+            looked = true;
+            next = null;
+            while (next == null && !open.isEmpty()) {
+                Level level = open.peek();
+                Path path;
+                try {
+                    path = level.entries.hasNext() ? level.entries.next() : null;
+                } catch (DirectoryIteratorException e) {
+                    path = null;
+                }
+                if (path == null) {
+                    open.pop().stream.close();
+                    continue;
+                }
+                BasicFileAttributes attributes = attributes(path);
+                if (attributes == null) continue; // removed while we were walking
+                if (attributes.isDirectory() && open.size() < maxDepth) {
+                    DirectoryStream<Path> children = children(path);
+                    if (children != null) open.push(new Level(children));
+                }
+                next = path;
+                nextAttributes = attributes;
+            }
+        }
+        return next != null;
+    }
+
+    Path next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more files");
+        }
+        looked = false;
+        current = next;
+        currentAttributes = nextAttributes;
+        return current;
+    }
+
+    // Attributes of the entry last returned by next()
+    BasicFileAttributes attributes() {
+        if (current == null) {
+            throw new IllegalStateException("Call nextFile before asking about the entry");
+        }
+        return currentAttributes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        while (!open.isEmpty()) {
+            open.pop().stream.close();
+        }
+    }
+
+    // Totals over all regular files below root whose names end with suffix
+    static final class Totals {
+        long files, bytes;
+    }
+
+    // Scans the whole tree at once on the common ForkJoinPool, one task per directory. Stops early when
+    // the calling thread is interrupted, as the UI's Stop button does.
+    static Totals scan(Path root, String suffix) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException(root + " is not a directory");
+        }
+        Scan task = new Scan(root, suffix);
+        Future<Totals> result = ForkJoinPool.commonPool().submit(task);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            task.cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Stopped");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static final class Scan extends RecursiveTask<Totals> {
+        private final Path directory;
+        private final String suffix;
+        final AtomicBoolean cancelled; // shared by all tasks of one scan, set by the thread that started it
+
+        Scan(Path root, String suffix) {
+            this(root, suffix, new AtomicBoolean());
+        }
+
+        private Scan(Path directory, String suffix, AtomicBoolean cancelled) {
+            this.directory = directory;
+            this.suffix = suffix;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected Totals compute() {
+            Totals totals = new Totals();
+            if (cancelled.get()) return totals;
+            List<Scan> subdirectories = new ArrayList<>();
+            DirectoryStream<Path> entries = children(directory);
+            if (entries == null) return totals;
+            try (entries) {
+                for (Path path : entries) {
+                    BasicFileAttributes attributes = attributes(path);
+                    if (attributes == null) continue;
+                    if (attributes.isDirectory()) {
+                        Scan subdirectory = new Scan(path, suffix, cancelled);
+                        subdirectory.fork();
+                        subdirectories.add(subdirectory);
+                    } else if (attributes.isRegularFile() && path.getFileName().toString().endsWith(suffix)) {
+                        totals.files++;
+                        totals.bytes += attributes.size();
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // Unreadable part of the tree; count what was seen
+            }
+            for (Scan subdirectory : subdirectories) {
+                Totals inner = subdirectory.join();
+                totals.files += inner.files;
+                totals.bytes += inner.bytes;
+            }
+            return totals;
+        }
+    }
+
+    // Size, type and times in one call; null if the entry has gone
+    private static BasicFileAttributes attributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static DirectoryStream<Path> children(Path directory) {
+        try {
+            return Files.newDirectoryStream(directory);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+// Called by both backends while a program runs, on the program's own thread: at every loop back edge
+// and, in the interpreter, periodically in straight-line code. An implementation may drain the output
+// produced so far (it is only touched between statements) or throw to stop the program.
+public interface ExecutionMonitor {
+    void checkpoint(StringBuilder output);
+}
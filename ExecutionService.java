@@ -0,0 +1,78 @@
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+// Runs independent programs in parallel on a work-stealing pool. A compiled Ast.Program is never
+// modified while it runs: every run gets its own Frame and output builder, the instruction array is
+// built before the program is shared, and builtins are stateless. One program can therefore be run
+// by any number of threads at once, and runs share nothing that would make them contend.
+final class ExecutionService implements AutoCloseable {
+    static final class Result {
+        final String name;
+        final String output; // trimmed, as shown by the UI
+        final int errors; // statements with syntax or type errors plus runtime errors
+        final long nanos;
+        final Exception failure; // set when the script could not be read or compiled
+
+        Result(String name, String output, int errors, long nanos, Exception failure) {
+            this.name = name;
+            this.output = output;
+            this.errors = errors;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+    }
+
+    private final JavaSubsetCompiler compiler;
+    private final ForkJoinPool pool;
+
+    ExecutionService(JavaSubsetCompiler compiler, int threads) {
+        this.compiler = compiler;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    ExecutionService(JavaSubsetCompiler compiler) {
+        this(compiler, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Runs an already compiled program; the same program may be submitted many times
+    CompletableFuture<Result> submit(String name, Ast.Program program) {
+        Interpreter.prepare(program);
+        return CompletableFuture.supplyAsync(() -> run(name, program), pool);
+    }
+
+    // Compiles and runs a file on the pool
+    CompletableFuture<Result> submit(Path file) {
+        return submit(file, null);
+    }
+
+    // With a profile, the compile and the run are recorded in it
+    CompletableFuture<Result> submit(Path file, Profile profile) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            Ast.Program program;
+            try {
+                program = compiler.compile(file, profile);
+            } catch (Exception e) {
+                return new Result(file.toString(), "", 0, System.nanoTime() - start, e);
+            }
+            return run(file.toString(), program);
+        }, pool);
+    }
+
+    private Result run(String name, Ast.Program program) {
+        long start = System.nanoTime();
+        StringBuilder output = new StringBuilder();
+        try {
+            int errors = program.errors + compiler.execute(program, output);
+            return new Result(name, output.toString().trim(), errors, System.nanoTime() - start, null);
+        } catch (RuntimeException e) {
+            return new Result(name, output.toString().trim(), program.errors, System.nanoTime() - start, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
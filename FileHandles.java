@@ -0,0 +1,106 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Files and directory walks opened through the streaming builtins, numbered per run. Every thread has its own table, so
+// scripts running in parallel never see each other's handles, and JavaSubsetCompiler releases the
+// table when a run ends, closing whatever the script left open.
+final class FileHandles {
+    private static final ThreadLocal<FileHandles> CURRENT = ThreadLocal.withInitial(FileHandles::new);
+
+    private final Map<Integer, Closeable> open = new LinkedHashMap<>();
+    private int next = 1;
+
+    private FileHandles() {}
+
+    static FileHandles current() {
+        return CURRENT.get();
+    }
+
+    // Closes the files of the run on this thread and reports failures, such as a final flush that
+    // did not fit on the disk, as errors in its output. Returns the number of failures.
+    static int release(StringBuilder output) {
+        FileHandles handles = CURRENT.get();
+        CURRENT.remove();
+        int failures = 0;
+        for (IOException failure : handles.closeEach()) {
+            output.append("Error: ").append(failure.getMessage()).append("\n");
+            failures++;
+        }
+        return failures;
+    }
+
+    int open(Closeable file) {
+        int handle = next++;
+        open.put(handle, file);
+        return handle;
+    }
+
+    BufferedReader reader(int handle) {
+        Closeable file = get(handle);
+        if (!(file instanceof BufferedReader)) {
+            throw new IllegalArgumentException("File " + handle + " is not open for reading");
+        }
+        return (BufferedReader) file;
+    }
+
+    BufferedWriter writer(int handle) {
+        Closeable file = get(handle);
+        if (!(file instanceof BufferedWriter)) {
+            throw new IllegalArgumentException("File " + handle + " is not open for writing");
+        }
+        return (BufferedWriter) file;
+    }
+
+    DirectoryWalk walk(int handle) {
+        Closeable file = get(handle);
+        if (!(file instanceof DirectoryWalk)) {
+            throw new IllegalArgumentException("Handle " + handle + " is not a directory walk");
+        }
+        return (DirectoryWalk) file;
+    }
+
+    boolean isWalk(int handle) {
+        return get(handle) instanceof DirectoryWalk;
+    }
+
+    void close(int handle) throws IOException {
+        Closeable file = get(handle);
+        open.remove(handle);
+        file.close();
+    }
+
+    // Closes every file, attempting all of them even if some fail, and throws the first failure
+    void closeAll() throws IOException {
+        List<IOException> failures = closeEach();
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    private List<IOException> closeEach() {
+        List<IOException> failures = new ArrayList<>();
+        for (Closeable file : open.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                failures.add(e);
+            }
+        }
+        open.clear();
+        return failures;
+    }
+
+    private Closeable get(int handle) {
+        Closeable file = open.get(handle);
+        if (file == null) {
+            throw new IllegalArgumentException("No open file with handle " + handle);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Arrays;
+
+// Variable storage for one run of a program. TypeChecker gives every variable a slot in the array
+// matching its type, so reads and writes are plain array accesses with no boxing.
+//
+// A function runs in a frame of its own, laid out the same way. A frame keeps the frames of the calls
+// it makes and reuses them for later calls, so a call allocates nothing once the program has made one
+// like it; calls made while evaluating another call's arguments get the next frame along.
+final class Frame {
+    private static final Frame[] NONE = {};
+
+    int[] ints;
+    double[] doubles;
+    boolean[] booleans;
+    Object[] objects;
+    // Shared by every frame of the run
+    final StringBuilder output;
+    final ExecutionMonitor monitor;
+    // Where a function's return statement leaves its value for the caller
+    int intResult;
+    double doubleResult;
+    boolean booleanResult;
+    Object objectResult;
+
+    private Frame[] callees = NONE;
+    private int calls; // callees in use
+
+    Frame(Ast.Program program) {
+        this(program, null, null);
+    }
+
+    Frame(Ast.Program program, StringBuilder output, ExecutionMonitor monitor) {
+        this(output, monitor);
+        ints = new int[program.intSlots];
+        doubles = new double[program.doubleSlots];
+        booleans = new boolean[program.booleanSlots];
+        objects = new Object[program.objectSlots];
+    }
+
+    private Frame(StringBuilder output, ExecutionMonitor monitor) {
+        this.output = output;
+        this.monitor = monitor;
+    }
+
+    // The frame for a call of the function, with every variable at its default value. The caller
+    // stores the arguments in it, runs the function and then calls exit().
+    Frame enter(Ast.FunctionDecl function) {
+        if (calls == callees.length) {
+            callees = Arrays.copyOf(callees, calls + 1);
+        }
+        Frame callee = callees[calls];
+        if (callee == null) {
+            callee = callees[calls] = new Frame(output, monitor);
+            callee.ints = new int[function.intSlots];
+            callee.doubles = new double[function.doubleSlots];
+            callee.booleans = new boolean[function.booleanSlots];
+            callee.objects = new Object[function.objectSlots];
+        } else {
+            callee.clear(function);
+        }
+        calls++;
+        return callee;
+    }
+
+    void exit() {
+        calls--;
+    }
+
+    // After a statement failed part way through a call, which then never returned
+    void unwind() {
+        calls = 0;
+    }
+
+    private void clear(Ast.FunctionDecl function) {
+        if (ints.length < function.intSlots) ints = new int[function.intSlots];
+        else Arrays.fill(ints, 0);
+        if (doubles.length < function.doubleSlots) doubles = new double[function.doubleSlots];
+        else Arrays.fill(doubles, 0.0);
+        if (booleans.length < function.booleanSlots) booleans = new boolean[function.booleanSlots];
+        else Arrays.fill(booleans, false);
+        if (objects.length < function.objectSlots) objects = new Object[function.objectSlots];
+        else Arrays.fill(objects, null);
+        calls = 0;
+    }
+}
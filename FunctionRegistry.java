@@ -0,0 +1,291 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntBinaryOperator;
+
+// Index of the builtins, built once when the class is loaded. Builtins are the public static methods of
+// CustomFunctions and of every library class named in a META-INF/jsc-builtins resource on the class
+// path, one fully qualified name per line. The lexer takes its function names from here too. Resolving
+// a call yields a Function whose MethodHandle already performs the argument conversions for that call site.
+final class FunctionRegistry {
+    private FunctionRegistry() {}
+
+    // Not final so that Profile can wrap a function to time its calls
+    static class Function {
+        final Method method;
+        final Class<?>[] argumentTypes;
+        final MethodHandle handle; // (Object[])Object, conversions to the declared parameter types applied
+        final Ast.Type returnType;
+        final boolean pure; // annotated @Pure, so Optimizer may call it with constant arguments
+        // The builtin as a DoubleUnaryOperator, DoubleBinaryOperator, IntBinaryOperator or IntsToDouble
+        // when it has one of those shapes, so the interpreter can call it with no boxing; otherwise null
+        final Object direct;
+
+        private Function(Method method, Class<?>[] argumentTypes, MethodHandle handle) {
+            this.method = method;
+            this.argumentTypes = argumentTypes;
+            this.handle = handle;
+            this.returnType = TypeChecker.typeOf(method.getReturnType());
+            this.pure = isPure(method);
+            this.direct = direct(method);
+        }
+
+        Function(Function function) {
+            this.method = function.method;
+            this.argumentTypes = function.argumentTypes;
+            this.handle = function.handle;
+            this.returnType = function.returnType;
+            this.pure = function.pure;
+            this.direct = function.direct;
+        }
+
+        Object invoke(Object[] args) {
+            try {
+                return handle.invokeExact(args);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(message(e), e);
+            }
+        }
+    }
+
+    // Several overloads accept the arguments and none of them is more specific than the others
+    static final class AmbiguousCallException extends RuntimeException {
+        AmbiguousCallException(String message) {
+            super(message);
+        }
+    }
+
+    // (int, int) -> double, the shape of divide
+    interface IntsToDouble {
+        double applyAsDouble(int a, int b);
+    }
+
+    // What a failed builtin reports. NIO names a missing or unreadable file without saying what is wrong,
+    // and the JIT may throw a preallocated, message-less exception for an integer division by zero.
+    // Recursion too deep for the thread's stack is reported like any other runtime error.
+    static String message(Throwable e) {
+        if (e instanceof ArithmeticException && e.getMessage() == null) return "/ by zero";
+        if (e instanceof StackOverflowError) return "Stack overflow";
+        if (e instanceof NoSuchFileException) return e.getMessage() + " (No such file or directory)";
+        if (e instanceof AccessDeniedException) return e.getMessage() + " (Permission denied)";
+        return e.getMessage();
+    }
+
+    static final String LIBRARY_LISTS = "META-INF/jsc-builtins";
+    // CustomFunctions first, then the listed libraries in class path order
+    static final List<Class<?>> LIBRARIES = libraries();
+    // name -> overloads by arity, in library order
+    private static final Map<String, Method[][]> METHODS = new HashMap<>();
+    // name(argument types) -> resolved target, NOT_FOUND, or the message of an AmbiguousCallException
+    private static final Map<String, Object> RESOLVED = new ConcurrentHashMap<>();
+    private static final Object NOT_FOUND = new Object();
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final MethodHandles.Lookup DIRECT = MethodHandles.lookup(); // may define lambdas
+
+    static {
+        for (Class<?> library : LIBRARIES) {
+            for (Method method : library.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers())
+                        && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    add(method);
+                }
+            }
+        }
+    }
+
+    private static void add(Method method) {
+        int arity = method.getParameterCount();
+        Method[][] overloads = METHODS.get(method.getName());
+        if (overloads == null || overloads.length <= arity) {
+            overloads = overloads == null ? new Method[arity + 1][] : Arrays.copyOf(overloads, arity + 1);
+            METHODS.put(method.getName(), overloads);
+        }
+        Method[] sameArity = overloads[arity];
+        if (sameArity == null) {
+            overloads[arity] = new Method[] {method};
+        } else {
+            overloads[arity] = Arrays.copyOf(sameArity, sameArity.length + 1);
+            overloads[arity][sameArity.length] = method;
+        }
+    }
+
+    private static List<Class<?>> libraries() {
+        List<Class<?>> libraries = new ArrayList<>();
+        libraries.add(CustomFunctions.class);
+        ClassLoader loader = FunctionRegistry.class.getClassLoader();
+        try {
+            Enumeration<URL> lists = loader.getResources(LIBRARY_LISTS);
+            while (lists.hasMoreElements()) {
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(lists.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        int comment = line.indexOf('#');
+                        String name = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                        if (name.isEmpty()) continue;
+                        Class<?> library = Class.forName(name, false, loader);
+                        if (!libraries.contains(library)) libraries.add(library);
+                    }
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot load builtin library " + e.getMessage(), e);
+        }
+        return Collections.unmodifiableList(libraries);
+    }
+
+    // Every builtin name, for the lexer
+    static Set<String> names() {
+        return Collections.unmodifiableSet(METHODS.keySet());
+    }
+
+    // Returns null when no builtin accepts these argument types
+    static Function resolve(String name, Class<?>[] argumentTypes) {
+        StringBuilder key = new StringBuilder(name).append('(');
+        for (Class<?> type : argumentTypes) {
+            key.append(type.getName()).append(',');
+        }
+        Object cached = RESOLVED.get(key.toString());
+        if (cached == null) {
+            try {
+                Function function = lookup(name, argumentTypes.clone());
+                cached = function != null ? function : NOT_FOUND;
+            } catch (AmbiguousCallException e) {
+                cached = e.getMessage();
+            }
+            RESOLVED.put(key.toString(), cached);
+        }
+        if (cached instanceof String) throw new AmbiguousCallException((String) cached);
+        return cached == NOT_FOUND ? null : (Function) cached;
+    }
+
+    private static Function lookup(String name, Class<?>[] argumentTypes) {
+        Method[][] overloads = METHODS.get(name);
+        if (overloads == null || overloads.length <= argumentTypes.length) return null;
+        Method[] candidates = overloads[argumentTypes.length];
+        if (candidates == null) return null;
+
+        List<Method> applicable = new ArrayList<>();
+        for (Method method : candidates) {
+            if (accepts(method.getParameterTypes(), argumentTypes)) applicable.add(method);
+        }
+        if (applicable.isEmpty()) return null;
+        Method best = mostSpecific(name, applicable);
+
+        // The interpreter may pass a GrowingString where the builtin takes any CharSequence
+        Class<?>[] params = best.getParameterTypes();
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] == CharSequence.class) argumentTypes[i] = CharSequence.class;
+        }
+        try {
+            MethodHandle handle = LOOKUP.unreflect(best)
+                    .asType(MethodType.methodType(Object.class, argumentTypes))
+                    .asSpreader(Object[].class, argumentTypes.length);
+            return new Function(best, argumentTypes, handle);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // A library outside the default package cannot name Pure, so an annotation of its own named Pure
+    // with runtime retention serves as well
+    private static boolean isPure(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            if (annotation.annotationType().getSimpleName().equals("Pure")) return true;
+        }
+        return false;
+    }
+
+    // Binds a numeric builtin to the functional interface for its shape, as a lambda calling it would be
+    private static Object direct(Method method) {
+        if (method.getExceptionTypes().length > 0) return null; // checked exceptions need invoke's wrapping
+        MethodType shape = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+        Class<?> type;
+        String name;
+        if (shape.equals(MethodType.methodType(double.class, double.class))) {
+            type = DoubleUnaryOperator.class;
+            name = "applyAsDouble";
+        } else if (shape.equals(MethodType.methodType(double.class, double.class, double.class))) {
+            type = DoubleBinaryOperator.class;
+            name = "applyAsDouble";
+        } else if (shape.equals(MethodType.methodType(int.class, int.class, int.class))) {
+            type = IntBinaryOperator.class;
+            name = "applyAsInt";
+        } else if (shape.equals(MethodType.methodType(double.class, int.class, int.class))) {
+            type = IntsToDouble.class;
+            name = "applyAsDouble";
+        } else {
+            return null;
+        }
+        try {
+            return LambdaMetafactory.metafactory(DIRECT, name, MethodType.methodType(type), shape,
+                    DIRECT.unreflect(method), shape).getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The overload whose parameters all convert to those of every other applicable one, as Java picks
+    // it (JLS 15.12.2.5), so the order reflection lists methods in does not matter. Of overloads with
+    // the same parameters from different libraries, the first library's wins.
+    private static Method mostSpecific(String name, List<Method> applicable) {
+        for (Method method : applicable) {
+            boolean mostSpecific = true;
+            for (Method other : applicable) {
+                if (!accepts(other.getParameterTypes(), method.getParameterTypes())) {
+                    mostSpecific = false;
+                    break;
+                }
+            }
+            if (mostSpecific) return method;
+        }
+        StringBuilder message = new StringBuilder("Call to '").append(name).append("' is ambiguous between");
+        for (int m = 0; m < applicable.size(); m++) {
+            message.append(m > 0 ? ", " : " ").append(name).append('(');
+            Class<?>[] params = applicable.get(m).getParameterTypes();
+            for (int i = 0; i < params.length; i++) {
+                message.append(i > 0 ? ", " : "").append(params[i].getSimpleName());
+            }
+            message.append(')');
+        }
+        throw new AmbiguousCallException(message.toString());
+    }
+
+    private static boolean accepts(Class<?>[] params, Class<?>[] types) {
+        for (int i = 0; i < params.length; i++) {
+            if (!isWidening(types[i], params[i])) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWidening(Class<?> from, Class<?> to) {
+        if (from == to || to == Object.class || to == CharSequence.class && from == String.class) return true;
+        if (from == int.class) return to == long.class || to == double.class;
+        if (from == long.class) return to == double.class;
+        return false;
+    }
+}
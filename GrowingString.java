@@ -0,0 +1,75 @@
+// The value of a String variable that the program keeps appending to. The interpreter runs
+// s = s + x by appending x to the builder held in s's slot instead of copying s, so building a string
+// from n parts in a loop costs O(n) rather than O(n^2). The String itself is only made when a reader
+// needs one and is kept until the next append. Only the slot that holds it ever sees it: reads of the
+// variable get the String, except for builtins declared with CharSequence parameters, which look at
+// the characters where they are.
+final class GrowingString implements CharSequence {
+    private final StringBuilder text;
+    private String flat; // null after an append until the next toString()
+
+    GrowingString(String start) {
+        // The first append copies start, so leave room for it to double without resizing
+        String value = String.valueOf(start);
+        text = new StringBuilder(Math.max(16, value.length() * 2)).append(value);
+        flat = value;
+    }
+
+    // The builder to append to; the appender must not shorten it except through truncate
+    StringBuilder append() {
+        flat = null;
+        return text;
+    }
+
+    // Undoes appends from a statement that failed part way
+    void truncate(int length) {
+        if (length < text.length()) {
+            text.setLength(length);
+            flat = null;
+        }
+    }
+
+    int indexOf(String substring) {
+        return flat != null ? flat.indexOf(substring) : text.indexOf(substring);
+    }
+
+    // Copies straight out of the builder, so the result is the only new string made
+    String replace(String target, String replacement) {
+        int match = target.isEmpty() ? -1 : text.indexOf(target);
+        if (match < 0) {
+            return toString().replace(target, replacement);
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        int from = 0;
+        do {
+            out.append(text, from, match).append(replacement);
+            from = match + target.length();
+            match = text.indexOf(target, from);
+        } while (match >= 0);
+        return out.append(text, from, text.length()).toString();
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String value = flat;
+        if (value == null) {
+            flat = value = text.toString();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,400 @@
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Tokens and top-level statements of a document that is edited in place, as the editor does. An edit
+// re-lexes and re-parses from the start of the statement before it until the new parse ends on an old
+// statement boundary again; the statements around it are reused and only moved. Top-level statements
+// are the unit of reuse, so an edit inside one large block re-reads that block.
+final class IncrementalAnalysis {
+    // A syntax or type error, reported at the line its top-level statement starts on
+    static final class Problem {
+        final int line;
+        final String message;
+
+        Problem(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + message;
+        }
+    }
+
+    // One top-level statement and the lexer tokens it was parsed from. Token positions are relative to
+    // the segment (line 1, column 1 at its first token), so edits before it only move these fields.
+    private static final class Segment {
+        final Ast.Stmt statement;
+        final List<LexicalAnalyzer.Token> tokens;
+        final boolean clean; // false when the statement ends inside a glued operator token ("+-")
+        final boolean openQuote; // has an unterminated string, which the lexer looked for to the end of the text
+        int start, end; // source span
+        int line, column; // of start
+
+        Segment(Ast.Stmt statement, List<LexicalAnalyzer.Token> tokens, boolean clean, int start, int end,
+                int line, int column) {
+            this.statement = statement;
+            this.tokens = tokens;
+            this.clean = clean;
+            this.openQuote = tokens.stream().anyMatch(token -> token.type == LexicalAnalyzer.TokenType.UNKNOWN
+                    && token.value.equals("\""));
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.column = column;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private int tokenCount;
+    private int[] firstTokens; // index of each segment's first token, rebuilt on demand after an edit
+
+    // Analyzes the whole text from scratch
+    void reset(CharSequence text) {
+        segments.clear();
+        tokenCount = 0;
+        reparse(text, 0, 0, -1, 0);
+    }
+
+    // Called after removed chars at offset were replaced by inserted chars; text is the new content
+    void update(CharSequence text, int offset, int removed, int inserted) {
+        // Start one statement early: the statement before the edit can run into it, through a trailing
+        // else or a name that turns into a call
+        int first = Math.max(0, lastStartingBefore(offset) - 1);
+        if (containsQuote(text, offset, inserted)) {
+            // A new quote can close a string that was left open before it
+            for (int i = 0; i < first; i++) {
+                if (segments.get(i).openQuote) {
+                    first = i;
+                    break;
+                }
+            }
+        }
+        reparse(text, first, offset + inserted, offset + removed, inserted - removed);
+    }
+
+    // The statements with their lines in document coordinates. A statement's lines are those of the text
+    // it was parsed from, so trees moved by edits since they were last handed out are renumbered here.
+    List<Ast.Stmt> statements() {
+        List<Ast.Stmt> statements = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            if (segment.statement.line != segment.line) {
+                moveLines(segment.statement, segment.line - segment.statement.line);
+            }
+            statements.add(segment.statement);
+        }
+        return statements;
+    }
+
+    // The statements as trees of their own, for compiling on another thread while the editor goes on
+    // checking and moving its own. Only the syntax is copied; checking the copy fills in the rest.
+    List<Ast.Stmt> snapshot() {
+        List<Ast.Stmt> statements = statements();
+        List<Ast.Stmt> copies = new ArrayList<>(statements.size());
+        for (Ast.Stmt stmt : statements) {
+            copies.add(copy(stmt));
+        }
+        return copies;
+    }
+
+    private static Ast.Stmt copy(Ast.Stmt stmt) {
+        Ast.Stmt copy;
+        if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            copy = new Ast.VarDecl(decl.type, decl.name, copy(decl.init));
+        } else if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            copy = new Ast.Assign(assign.name, copy(assign.value), assign.compound);
+        } else if (stmt instanceof Ast.Print) {
+            copy = new Ast.Print(copy(((Ast.Print) stmt).value));
+        } else if (stmt instanceof Ast.ExprStmt) {
+            copy = new Ast.ExprStmt(copy(((Ast.ExprStmt) stmt).expr));
+        } else if (stmt instanceof Ast.Block) {
+            copy = copyBlock((Ast.Block) stmt);
+        } else if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            copy = new Ast.If(copy(branch.condition), copy(branch.then),
+                    branch.otherwise != null ? copy(branch.otherwise) : null);
+        } else if (stmt instanceof Ast.While) {
+            copy = new Ast.While(copy(((Ast.While) stmt).condition), copy(((Ast.While) stmt).body));
+        } else if (stmt instanceof Ast.FunctionDecl) {
+            Ast.FunctionDecl decl = (Ast.FunctionDecl) stmt;
+            List<Ast.Parameter> parameters = new ArrayList<>(decl.parameters.size());
+            for (Ast.Parameter parameter : decl.parameters) {
+                parameters.add(new Ast.Parameter(parameter.type, parameter.name));
+            }
+            copy = new Ast.FunctionDecl(decl.returnType, decl.name, parameters, copyBlock(decl.body));
+        } else if (stmt instanceof Ast.Return) {
+            Ast.Expr value = ((Ast.Return) stmt).value;
+            copy = new Ast.Return(value != null ? copy(value) : null);
+        } else {
+            copy = new Ast.Invalid(((Ast.Invalid) stmt).message);
+        }
+        copy.line = stmt.line;
+        return copy;
+    }
+
+    private static Ast.Block copyBlock(Ast.Block block) {
+        List<Ast.Stmt> statements = new ArrayList<>(block.statements.size());
+        for (Ast.Stmt inner : block.statements) {
+            statements.add(copy(inner));
+        }
+        Ast.Block copy = new Ast.Block(statements);
+        copy.line = block.line;
+        return copy;
+    }
+
+    private static Ast.Expr copy(Ast.Expr expr) {
+        if (expr instanceof Ast.Variable) return new Ast.Variable(((Ast.Variable) expr).name);
+        if (expr instanceof Ast.Unary) {
+            return new Ast.Unary(((Ast.Unary) expr).op, copy(((Ast.Unary) expr).operand));
+        }
+        if (expr instanceof Ast.Binary) {
+            Ast.Binary binary = (Ast.Binary) expr;
+            return new Ast.Binary(binary.op, copy(binary.left), copy(binary.right));
+        }
+        if (expr instanceof Ast.Call) {
+            Ast.Call call = (Ast.Call) expr;
+            List<Ast.Expr> args = new ArrayList<>(call.args.size());
+            for (Ast.Expr arg : call.args) {
+                args.add(copy(arg));
+            }
+            return new Ast.Call(call.name, args);
+        }
+        return new Ast.Literal(((Ast.Literal) expr).value);
+    }
+
+    private static void moveLines(Ast.Stmt stmt, int delta) {
+        stmt.line += delta;
+        if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                moveLines(inner, delta);
+            }
+        } else if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            moveLines(branch.then, delta);
+            if (branch.otherwise != null) moveLines(branch.otherwise, delta);
+        } else if (stmt instanceof Ast.While) {
+            moveLines(((Ast.While) stmt).body, delta);
+        } else if (stmt instanceof Ast.FunctionDecl) {
+            moveLines(((Ast.FunctionDecl) stmt).body, delta);
+        }
+    }
+
+    // The lexer tokens of the whole text, as LexicalAnalyzer.analyze would return them
+    List<LexicalAnalyzer.Token> tokens() {
+        List<LexicalAnalyzer.Token> tokens = new ArrayList<>(tokenCount);
+        for (Segment segment : segments) {
+            for (LexicalAnalyzer.Token token : segment.tokens) {
+                tokens.add(absolute(segment, token));
+            }
+        }
+        return tokens;
+    }
+
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    // One token by index, for views that only look at the rows they show
+    LexicalAnalyzer.Token token(int index) {
+        if (firstTokens == null) {
+            firstTokens = new int[segments.size()];
+            int count = 0;
+            for (int i = 0; i < firstTokens.length; i++) {
+                firstTokens[i] = count;
+                count += segments.get(i).tokens.size();
+            }
+        }
+        // The last segment starting at or before index; empty segments share the next one's start
+        int low = 0, high = firstTokens.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstTokens[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        Segment segment = segments.get(high);
+        return absolute(segment, segment.tokens.get(index - firstTokens[high]));
+    }
+
+    private static LexicalAnalyzer.Token absolute(Segment segment, LexicalAnalyzer.Token token) {
+        boolean firstLine = token.line == 1;
+        return new LexicalAnalyzer.Token(token.type, token.value, segment.line + token.line - 1,
+                firstLine ? segment.column + token.column - 1 : token.column, segment.start + token.offset);
+    }
+
+    // Type checks the current statements and collects their errors
+    List<Problem> check() {
+        new TypeChecker().check(new Ast.Program(statements()));
+        List<Problem> problems = new ArrayList<>();
+        for (Segment segment : segments) {
+            collectProblems(segment.statement, segment.line, problems);
+        }
+        return problems;
+    }
+
+    private static void collectProblems(Ast.Stmt stmt, int line, List<Problem> problems) {
+        if (stmt instanceof Ast.Invalid) {
+            problems.add(new Problem(line, ((Ast.Invalid) stmt).message));
+        } else if (stmt.error != null) {
+            problems.add(new Problem(line, stmt.error));
+        }
+        if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                collectProblems(inner, line, problems);
+            }
+        } else if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            collectProblems(branch.then, line, problems);
+            if (branch.otherwise != null) collectProblems(branch.otherwise, line, problems);
+        } else if (stmt instanceof Ast.While) {
+            collectProblems(((Ast.While) stmt).body, line, problems);
+        } else if (stmt instanceof Ast.FunctionDecl && stmt.error == null) {
+            // The body of a declaration with an error is not checked, and may hold errors of an earlier check
+            collectProblems(((Ast.FunctionDecl) stmt).body, line, problems);
+        }
+    }
+
+    private static boolean containsQuote(CharSequence text, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (text.charAt(i) == '"') return true;
+        }
+        return false;
+    }
+
+    // Index of the last segment starting before offset, or -1
+    private int lastStartingBefore(int offset) {
+        int low = 0, high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).start < offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    // Parses from the start of segment first. Old segments are in old coordinates (new minus delta);
+    // the parse may stop once it has passed both damage ends and finishes a statement exactly where
+    // an old one finished, because the text from there on is unchanged and lexes and parses the same.
+    private void reparse(CharSequence text, int first, int newDamageEnd, int oldDamageEnd, int delta) {
+        int from = 0, line = 1, column = 1;
+        if (first > 0) {
+            Segment segment = segments.get(first);
+            from = segment.start;
+            line = segment.line;
+            column = segment.column;
+        }
+        Run run = new Run(text, from, line, column);
+        Parser parser = new Parser(run);
+        List<Segment> parsed = new ArrayList<>();
+        int old = first; // first old segment the parse has not passed yet
+        int assigned = 0; // raw tokens of the run already given to a segment
+        Ast.Stmt stmt;
+        while ((stmt = parser.parseNext()) != null) {
+            LexicalAnalyzer.Token head = parser.firstToken();
+            int start = from + (int) head.offset;
+            int end = from + (int) parser.endOffset();
+            int segmentLine = run.line(head), segmentColumn = run.column(head);
+
+            List<LexicalAnalyzer.Token> tokens = new ArrayList<>();
+            int rawEnd = -1;
+            while (run.available(assigned) && from + run.raw.get(assigned).offset < end) {
+                LexicalAnalyzer.Token token = run.raw.get(assigned++);
+                int tokenLine = run.line(token);
+                tokens.add(new LexicalAnalyzer.Token(token.type, token.value, tokenLine - segmentLine + 1,
+                        tokenLine == segmentLine ? run.column(token) - segmentColumn + 1 : run.column(token),
+                        from + token.offset - start));
+                rawEnd = from + (int) token.offset + token.length();
+            }
+            boolean clean = rawEnd == end;
+            parsed.add(new Segment(stmt, tokens, clean, start, end, segmentLine, segmentColumn));
+
+            while (old < segments.size() && segments.get(old).end + delta < end) old++;
+            if (clean && end >= newDamageEnd && old < segments.size() && segments.get(old).clean
+                    && segments.get(old).end >= oldDamageEnd && segments.get(old).end + delta == end
+                    && run.available(assigned)) {
+                shift(old + 1, delta, run.raw.get(assigned), run);
+                replace(first, old + 1, parsed);
+                return;
+            }
+        }
+        replace(first, segments.size(), parsed);
+    }
+
+    // Moves the reused segments from index on; next is the token the first of them now starts with
+    private void shift(int index, int delta, LexicalAnalyzer.Token next, Run run) {
+        Segment firstKept = segments.get(index);
+        int oldLine = firstKept.line;
+        int lineDelta = run.line(next) - oldLine;
+        int columnDelta = run.column(next) - firstKept.column;
+        for (int i = index; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            segment.start += delta;
+            segment.end += delta;
+            if (segment.line == oldLine) segment.column += columnDelta;
+            segment.line += lineDelta;
+        }
+    }
+
+    private void replace(int from, int to, List<Segment> parsed) {
+        List<Segment> replaced = segments.subList(from, to);
+        for (Segment segment : replaced) tokenCount -= segment.tokens.size();
+        for (Segment segment : parsed) tokenCount += segment.tokens.size();
+        replaced.clear();
+        replaced.addAll(parsed);
+        firstTokens = null;
+    }
+
+    // Lexes the text from a statement start on, keeping every raw token so segments can take theirs.
+    // Token positions are relative to that start; line and column translate them back.
+    private static final class Run implements Iterator<LexicalAnalyzer.Token> {
+        final LexicalAnalyzer.TokenStream stream;
+        final List<LexicalAnalyzer.Token> raw = new ArrayList<>();
+        final int line, column; // of the start
+        int handed;
+
+        Run(CharSequence text, int from, int line, int column) {
+            this.stream = LexicalAnalyzer.stream(CharBuffer.wrap(text, from, text.length()));
+            this.line = line;
+            this.column = column;
+        }
+
+        int line(LexicalAnalyzer.Token token) {
+            return line + token.line - 1;
+        }
+
+        int column(LexicalAnalyzer.Token token) {
+            return token.line == 1 ? column + token.column - 1 : token.column;
+        }
+
+        boolean available(int index) {
+            while (raw.size() <= index && stream.hasNext()) {
+                raw.add(stream.next());
+            }
+            return index < raw.size();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return available(handed);
+        }
+
+        @Override
+        public LexicalAnalyzer.Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return raw.get(handed++);
+        }
+    }
+}
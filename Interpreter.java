@@ -0,0 +1,719 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs a type-checked Ast.Program and collects its output. The program is compiled once into a flat
+// array of Instructions, with if/while lowered to branches and jumps, and expressions compiled to Node
+// trees bound to Frame slots. The code is kept on the Program so later runs only allocate a fresh Frame.
+// Functions declared in the program are compiled the same way into Routines, which run in frames of
+// their own; calls are bound to their routine when the calling code is compiled.
+class Interpreter {
+    // Straight-line code reaches the monitor at least this often (a power of two)
+    private static final int CHECKPOINT_INTERVAL = 1024;
+
+    String execute(Ast.Program program) {
+        StringBuilder output = new StringBuilder();
+        execute(program, output);
+        return output.toString().trim();
+    }
+
+    // Appends the program's output and returns the number of runtime errors reported in it. Statements
+    // rejected at compile time are reported too but are already counted in Program.errors.
+    int execute(Ast.Program program, StringBuilder output) {
+        return execute(program, output, null);
+    }
+
+    int execute(Ast.Program program, StringBuilder output, ExecutionMonitor monitor) {
+        Instruction[] code = prepare(program);
+        Frame frame = new Frame(program, output, monitor);
+        int errors = 0;
+        int steps = 0;
+        int pc = 0;
+        try {
+            while (pc < code.length) {
+                Instruction instruction = code[pc];
+                int next;
+                try {
+                    next = instruction.execute(frame, output, pc);
+                } catch (RuntimeException | StackOverflowError e) {
+                    output.append("Error: ").append(FunctionRegistry.message(e)).append("\n");
+                    if (!(e instanceof CompileError)) errors++;
+                    frame.unwind();
+                    next = instruction.resume;
+                }
+                if (monitor != null && (next <= pc || (++steps & (CHECKPOINT_INTERVAL - 1)) == 0)) {
+                    monitor.checkpoint(output);
+                }
+                pc = next;
+            }
+        } catch (Stopped e) {
+            throw e.reason;
+        }
+        return errors;
+    }
+
+    // Runs a function's body in its frame, which holds the arguments, until it returns
+    static Frame run(Routine routine, Frame frame) {
+        Instruction[] code = routine.code;
+        StringBuilder output = frame.output;
+        ExecutionMonitor monitor = frame.monitor;
+        // Recursion need not pass a loop, so every call is a checkpoint too
+        if (monitor != null) checkpoint(monitor, output);
+        int pc = 0;
+        while (pc < code.length) {
+            int next = code[pc].execute(frame, output, pc);
+            if (next <= pc && monitor != null) checkpoint(monitor, output);
+            pc = next;
+        }
+        return frame;
+    }
+
+    private static void checkpoint(ExecutionMonitor monitor, StringBuilder output) {
+        try {
+            monitor.checkpoint(output);
+        } catch (RuntimeException e) {
+            throw new Stopped(e);
+        }
+    }
+
+    // Carries the monitor's exception out of a function, past the statement that called it, which
+    // would otherwise report it as an error of its own and carry on. Public because compiled scripts,
+    // which live in a class loader of their own, catch it by name.
+    public static final class Stopped extends Error {
+        final RuntimeException reason;
+
+        Stopped(RuntimeException reason) {
+            super(reason.getMessage(), reason, false, false);
+            this.reason = reason;
+        }
+    }
+
+    // Builds the program's instructions if that has not happened yet. After this the program is only
+    // read, so it can be executed by several threads at once.
+    static Instruction[] prepare(Ast.Program program) {
+        Instruction[] code = program.code;
+        if (code == null) {
+            code = compile(program.statements);
+            program.code = code;
+        }
+        return code;
+    }
+
+    static Instruction[] compile(List<Ast.Stmt> statements) {
+        return compile(statements, null);
+    }
+
+    // With a profile, every instruction but jumps is timed against the line of its statement, and
+    // builtins against their names. Such code is only used for the profiled program.
+    static Instruction[] compile(List<Ast.Stmt> statements, Profile profile) {
+        Compilation compilation = new Compilation(statements, profile);
+        List<Instruction> code = new ArrayList<>();
+        for (Ast.Stmt stmt : statements) {
+            compile(stmt, code, compilation);
+        }
+        if (profile != null) {
+            // Branches learn where they resume only after their statement is compiled
+            for (Instruction instruction : code) {
+                if (instruction instanceof Timed) instruction.resume = ((Timed) instruction).instruction.resume;
+            }
+        }
+        return code.toArray(new Instruction[0]);
+    }
+
+    private static void compile(Ast.Stmt stmt, List<Instruction> code, Compilation compilation) {
+        Profile profile = compilation.profile;
+        if (stmt.error != null) {
+            emit(code, new Fail(stmt.error), stmt, profile);
+        } else if (stmt instanceof Ast.FunctionDecl) {
+            // Compiled along with the first call to it
+        } else if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                compile(inner, code, compilation);
+            }
+        } else if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            Branch test = new Branch(Node.compile(branch.condition, compilation));
+            emit(code, test, stmt, profile);
+            compile(branch.then, code, compilation);
+            if (branch.otherwise != null) {
+                Jump skip = new Jump();
+                emit(code, skip);
+                test.target = code.size();
+                compile(branch.otherwise, code, compilation);
+                skip.target = code.size();
+            } else {
+                test.target = code.size();
+            }
+            test.resume = code.size();
+        } else if (stmt instanceof Ast.While) {
+            Ast.While loop = (Ast.While) stmt;
+            int top = code.size();
+            Branch test = new Branch(Node.compile(loop.condition, compilation));
+            emit(code, test, stmt, profile);
+            compile(loop.body, code, compilation);
+            Jump back = new Jump();
+            back.target = top;
+            emit(code, back);
+            test.target = test.resume = code.size();
+        } else {
+            emit(code, compileSimple(stmt, compilation), stmt, profile);
+        }
+    }
+
+    // A failing instruction continues with the one after it, except branches, which skip their statement
+    private static void emit(List<Instruction> code, Instruction instruction) {
+        instruction.resume = code.size() + 1;
+        code.add(instruction);
+    }
+
+    private static void emit(List<Instruction> code, Instruction instruction, Ast.Stmt stmt, Profile profile) {
+        if (profile != null) {
+            instruction.resume = code.size() + 1;
+            instruction = new Timed(instruction, profile.line(stmt.line));
+        }
+        emit(code, instruction);
+    }
+
+    private static Instruction compileSimple(Ast.Stmt stmt, Compilation compilation) {
+        if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            return store(TypeChecker.declaredType(decl.type), decl.slot, decl.init, compilation);
+        }
+        if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            return store(assign.type, assign.slot, assign.value, compilation);
+        }
+        if (stmt instanceof Ast.Print) {
+            Ast.Expr value = ((Ast.Print) stmt).value;
+            return print(Node.compile(value, compilation), value);
+        }
+        if (stmt instanceof Ast.Return) {
+            Ast.Return ret = (Ast.Return) stmt;
+            if (ret.value == null) return new ReturnVoid();
+            Node value = Node.compile(ret.value, compilation);
+            switch (ret.type) {
+                case INT: return new ReturnInt(value);
+                case DOUBLE: return new ReturnDouble(value);
+                case BOOLEAN: return new ReturnBoolean(value);
+                default: return new ReturnObject(value);
+            }
+        }
+        if (stmt instanceof Ast.ExprStmt) {
+            Ast.Expr expr = ((Ast.ExprStmt) stmt).expr;
+            Node node = Node.compile(expr, compilation);
+            switch (expr.type) {
+                case VOID: return new Evaluate(node);
+                // Reference results are only printed when not null
+                case STRING: case OBJECT: case INT_ARRAY: case DOUBLE_ARRAY: return new PrintNonNull(node);
+                default: return print(node, expr);
+            }
+        }
+        return new Output(((Ast.Invalid) stmt).message);
+    }
+
+    // A function called while the line is built may print lines of its own, which go first
+    private static Instruction print(Node node, Ast.Expr expr) {
+        return callsFunction(expr) ? new PrintLine(node) : new Print(node);
+    }
+
+    private static boolean callsFunction(Ast.Expr expr) {
+        if (expr instanceof Ast.Unary) return callsFunction(((Ast.Unary) expr).operand);
+        if (expr instanceof Ast.Binary) {
+            return callsFunction(((Ast.Binary) expr).left) || callsFunction(((Ast.Binary) expr).right);
+        }
+        if (expr instanceof Ast.Call) {
+            if (((Ast.Call) expr).function == null) return true;
+            for (Ast.Expr arg : ((Ast.Call) expr).args) {
+                if (callsFunction(arg)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static Instruction store(Ast.Type type, int slot, Ast.Expr value, Compilation compilation) {
+        List<Ast.Expr> appended = appended(type, slot, value);
+        if (appended != null) {
+            Node[] parts = new Node[appended.size()];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = Node.compile(appended.get(i), compilation);
+            }
+            return new AppendString(slot, parts);
+        }
+        return store(type, slot, Node.compile(value, compilation));
+    }
+
+    // For s = s + a + b, the parts appended to s, here a and b; null for any other assignment. Parts
+    // that read s themselves would see it half appended to, so they make it an ordinary assignment.
+    static List<Ast.Expr> appended(Ast.Type type, int slot, Ast.Expr value) {
+        if (type != Ast.Type.STRING || !(value instanceof Ast.Binary) || value.type != Ast.Type.STRING) return null;
+        List<Ast.Expr> parts = new ArrayList<>();
+        concatParts(value, parts);
+        Ast.Expr first = parts.get(0);
+        if (!(first instanceof Ast.Variable) || ((Ast.Variable) first).slot != slot || first.type != Ast.Type.STRING) {
+            return null;
+        }
+        List<Ast.Expr> rest = parts.subList(1, parts.size());
+        return reads(rest, slot) ? null : rest;
+    }
+
+    // The operands of a chain of string concatenations, left to right, as Node.compile flattens them
+    private static void concatParts(Ast.Expr expr, List<Ast.Expr> parts) {
+        if (expr instanceof Ast.Binary && expr.type == Ast.Type.STRING) {
+            concatParts(((Ast.Binary) expr).left, parts);
+            concatParts(((Ast.Binary) expr).right, parts);
+        } else {
+            parts.add(expr);
+        }
+    }
+
+    private static boolean reads(List<Ast.Expr> exprs, int slot) {
+        for (Ast.Expr expr : exprs) {
+            if (reads(expr, slot)) return true;
+        }
+        return false;
+    }
+
+    private static boolean reads(Ast.Expr expr, int slot) {
+        if (expr instanceof Ast.Variable) {
+            return ((Ast.Variable) expr).slot == slot && expr.type == Ast.Type.STRING;
+        }
+        if (expr instanceof Ast.Unary) return reads(((Ast.Unary) expr).operand, slot);
+        if (expr instanceof Ast.Binary) {
+            return reads(((Ast.Binary) expr).left, slot) || reads(((Ast.Binary) expr).right, slot);
+        }
+        return expr instanceof Ast.Call && reads(((Ast.Call) expr).args, slot);
+    }
+
+    private static Instruction store(Ast.Type type, int slot, Node value) {
+        switch (type) {
+            case INT: return new StoreInt(slot, value);
+            case DOUBLE: return new StoreDouble(slot, value);
+            case BOOLEAN: return new StoreBoolean(slot, value);
+            default: return new StoreObject(slot, value);
+        }
+    }
+
+    // What compiling one program shares between its statements: the profile, if any, and the routines of
+    // the functions the program declares, each compiled once however many calls it has
+    static final class Compilation {
+        // Inline expressions up to this many syntax tree nodes, through at most this many calls
+        private static final int MAX_INLINE_SIZE = 24, MAX_INLINE_DEPTH = 4;
+
+        final Profile profile;
+        private final Map<String, Ast.FunctionDecl> declarations = new HashMap<>();
+        private final Map<String, Routine> routines = new HashMap<>();
+        // Routines being compiled or inlined, which are never inlined again inside themselves
+        private final Map<Routine, Boolean> active = new IdentityHashMap<>();
+        private int inlined; // of the routines in active
+        // While inlining, the routine whose expression is compiled and the nodes standing for its parameters
+        private Routine inlining;
+        private Node[] arguments;
+
+        Compilation(List<Ast.Stmt> statements, Profile profile) {
+            this.profile = profile;
+            for (Ast.Stmt stmt : statements) {
+                if (stmt instanceof Ast.FunctionDecl && stmt.error == null) {
+                    declarations.putIfAbsent(((Ast.FunctionDecl) stmt).name, (Ast.FunctionDecl) stmt);
+                }
+            }
+        }
+
+        // The routine a call binds to, compiled on first use
+        Routine routine(String name) {
+            Routine routine = routines.get(name);
+            if (routine != null) return routine;
+            Ast.FunctionDecl declaration = declarations.get(name);
+            if (declaration == null) {
+                throw new IllegalStateException("Function " + name + " is not declared");
+            }
+            routine = new Routine(declaration);
+            routines.put(name, routine);
+            // Compiled with no substitutions in effect, whatever the call that asked for it was in
+            Routine outerInlining = inlining;
+            Node[] outerArguments = arguments;
+            int outerInlined = inlined;
+            inlining = null;
+            arguments = null;
+            inlined = 0;
+            active.put(routine, Boolean.TRUE);
+            try {
+                if (routine.expression != null && profile == null) {
+                    routine.body = Node.compile(routine.expression, this);
+                } else {
+                    List<Instruction> code = new ArrayList<>();
+                    compile(declaration.body, code, this);
+                    routine.code = code.toArray(new Instruction[0]);
+                }
+            } finally {
+                active.remove(routine);
+                inlining = outerInlining;
+                arguments = outerArguments;
+                inlined = outerInlined;
+            }
+            return routine;
+        }
+
+        // While inlining, the node for a read of one of the inlined function's parameters, else null
+        Node argument(Ast.Variable variable) {
+            return arguments != null ? arguments[inlining.parameter(variable)] : null;
+        }
+
+        // The function's returned expression compiled in place of the call, reading the arguments where
+        // it reads the parameters; null when the call has to be made. Profiled code makes every call, so
+        // its counts match the source.
+        Node inline(Routine routine, Ast.Call call, Node[] args) {
+            if (profile != null || routine.expression == null || active.containsKey(routine)
+                    || inlined >= MAX_INLINE_DEPTH || size(routine.expression) > MAX_INLINE_SIZE
+                    || !substitutable(routine, call.args)) {
+                return null;
+            }
+            Node[] converted = new Node[args.length];
+            for (int i = 0; i < args.length; i++) {
+                converted[i] = Node.convert(args[i], call.args.get(i).type, routine.parameterTypes[i]);
+            }
+            Routine outerInlining = inlining;
+            Node[] outerArguments = arguments;
+            inlining = routine;
+            arguments = converted;
+            active.put(routine, Boolean.TRUE);
+            inlined++;
+            try {
+                return Node.convert(Node.compile(routine.expression, this), routine.expression.type, call.type);
+            } finally {
+                inlined--;
+                active.remove(routine);
+                inlining = outerInlining;
+                arguments = outerArguments;
+            }
+        }
+
+        private static int size(Ast.Expr expr) {
+            if (expr instanceof Ast.Unary) return 1 + size(((Ast.Unary) expr).operand);
+            if (expr instanceof Ast.Binary) {
+                return 1 + size(((Ast.Binary) expr).left) + size(((Ast.Binary) expr).right);
+            }
+            if (expr instanceof Ast.Call) {
+                int size = 1;
+                for (Ast.Expr arg : ((Ast.Call) expr).args) size += size(arg);
+                return size;
+            }
+            return 1;
+        }
+
+        // A literal or variable argument can be read wherever and however often the expression reads the
+        // parameter. Any other argument must still run exactly once, in its place among the others and
+        // before anything in the expression that has an effect or can fail.
+        private static boolean substitutable(Routine routine, List<Ast.Expr> args) {
+            List<Integer> events = new ArrayList<>();
+            reads(routine, routine.expression, false, events);
+            boolean[] read = new boolean[args.size()];
+            boolean hazard = false;
+            int last = -1;
+            for (int event : events) {
+                if (event == HAZARD) {
+                    hazard = true;
+                    continue;
+                }
+                int parameter = event >> 1;
+                Ast.Expr arg = args.get(parameter);
+                if (arg instanceof Ast.Literal || arg instanceof Ast.Variable) continue;
+                boolean conditional = (event & 1) != 0;
+                if (read[parameter] || hazard || conditional || parameter < last) return false;
+                read[parameter] = true;
+                last = parameter;
+            }
+            for (int i = 0; i < read.length; i++) {
+                Ast.Expr arg = args.get(i);
+                if (!read[i] && !(arg instanceof Ast.Literal || arg instanceof Ast.Variable)) return false;
+            }
+            return true;
+        }
+
+        private static final int HAZARD = -1;
+
+        // Parameter reads (index * 2, plus 1 when only some evaluations make them) and HAZARDs, in the
+        // order evaluating the expression meets them
+        private static void reads(Routine routine, Ast.Expr expr, boolean conditional, List<Integer> events) {
+            if (expr instanceof Ast.Variable) {
+                events.add(routine.parameter((Ast.Variable) expr) * 2 + (conditional ? 1 : 0));
+            } else if (expr instanceof Ast.Unary) {
+                reads(routine, ((Ast.Unary) expr).operand, conditional, events);
+            } else if (expr instanceof Ast.Binary) {
+                Ast.Binary binary = (Ast.Binary) expr;
+                boolean shortCircuit = binary.op.equals("&&") || binary.op.equals("||");
+                reads(routine, binary.left, conditional, events);
+                reads(routine, binary.right, conditional || shortCircuit, events);
+                if (binary.type != Ast.Type.DOUBLE && (binary.op.equals("/") || binary.op.equals("%"))) {
+                    events.add(HAZARD); // division by zero
+                }
+            } else if (expr instanceof Ast.Call) {
+                for (Ast.Expr arg : ((Ast.Call) expr).args) {
+                    reads(routine, arg, conditional, events);
+                }
+                events.add(HAZARD);
+            }
+        }
+    }
+
+    // A function's compiled body. Its parameters are the first variables of its frame.
+    static final class Routine {
+        final Ast.FunctionDecl declaration;
+        final Ast.Type[] parameterTypes;
+        final int[] parameterSlots;
+        // The returned expression when the body is nothing but "return expression;"
+        final Ast.Expr expression;
+        // The expression compiled for the callee's frame, run without the instruction loop; otherwise
+        // the body's instructions
+        Node body;
+        Instruction[] code;
+
+        Routine(Ast.FunctionDecl declaration) {
+            this.declaration = declaration;
+            int count = declaration.parameters.size();
+            parameterTypes = new Ast.Type[count];
+            parameterSlots = new int[count];
+            for (int i = 0; i < count; i++) {
+                parameterTypes[i] = TypeChecker.declaredType(declaration.parameters.get(i).type);
+                parameterSlots[i] = declaration.parameters.get(i).slot;
+            }
+            List<Ast.Stmt> statements = declaration.body.statements;
+            Ast.Stmt only = statements.size() == 1 ? statements.get(0) : null;
+            expression = only instanceof Ast.Return && only.error == null ? ((Ast.Return) only).value : null;
+        }
+
+        // Index of the parameter a variable of the body is; an expression body reads nothing else
+        int parameter(Ast.Variable variable) {
+            Ast.Type kind = Node.kind(variable.type);
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (parameterSlots[i] == variable.slot && Node.kind(parameterTypes[i]) == kind) return i;
+            }
+            throw new IllegalStateException("Not a parameter: " + variable.name);
+        }
+    }
+
+    // Executes and returns the index of the next instruction
+    abstract static class Instruction {
+        int resume;
+        abstract int execute(Frame frame, StringBuilder output, int pc);
+    }
+
+    static final class Branch extends Instruction {
+        final Node condition;
+        int target;
+        Branch(Node condition) { this.condition = condition; }
+        int execute(Frame frame, StringBuilder output, int pc) { return condition.evalBoolean(frame) ? pc + 1 : target; }
+    }
+
+    static final class Timed extends Instruction {
+        final Instruction instruction;
+        final Profile.Counter counter;
+        Timed(Instruction instruction, Profile.Counter counter) { this.instruction = instruction; this.counter = counter; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            long nanos = System.nanoTime(), bytes = Profile.allocatedBytes();
+            try {
+                return instruction.execute(frame, output, pc);
+            } finally {
+                counter.add(nanos, bytes);
+            }
+        }
+    }
+
+    static final class Jump extends Instruction {
+        int target;
+        int execute(Frame frame, StringBuilder output, int pc) { return target; }
+    }
+
+    static final class StoreInt extends Instruction {
+        final int slot;
+        final Node value;
+        StoreInt(int slot, Node value) { this.slot = slot; this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.ints[slot] = value.evalInt(frame);
+            return pc + 1;
+        }
+    }
+
+    static final class StoreDouble extends Instruction {
+        final int slot;
+        final Node value;
+        StoreDouble(int slot, Node value) { this.slot = slot; this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.doubles[slot] = value.evalDouble(frame);
+            return pc + 1;
+        }
+    }
+
+    static final class StoreBoolean extends Instruction {
+        final int slot;
+        final Node value;
+        StoreBoolean(int slot, Node value) { this.slot = slot; this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.booleans[slot] = value.evalBoolean(frame);
+            return pc + 1;
+        }
+    }
+
+    static final class StoreObject extends Instruction {
+        final int slot;
+        final Node value;
+        StoreObject(int slot, Node value) { this.slot = slot; this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.objects[slot] = value.evalObject(frame);
+            return pc + 1;
+        }
+    }
+
+    static final class AppendString extends Instruction {
+        final int slot;
+        final Node[] parts;
+        AppendString(int slot, Node[] parts) { this.slot = slot; this.parts = parts; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            Object value = frame.objects[slot];
+            GrowingString text = value instanceof GrowingString ? (GrowingString) value : new GrowingString((String) value);
+            int length = text.length();
+            StringBuilder out = text.append();
+            try {
+                for (Node part : parts) {
+                    part.appendTo(out, frame);
+                }
+            } catch (RuntimeException e) {
+                // The variable keeps its old value, as the assignment never happened
+                text.truncate(length);
+                throw e;
+            }
+            frame.objects[slot] = text;
+            return pc + 1;
+        }
+    }
+
+    // Returning sends the routine's loop past the end of its code
+    private static final int RETURNED = Integer.MAX_VALUE;
+
+    static final class ReturnInt extends Instruction {
+        final Node value;
+        ReturnInt(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.intResult = value.evalInt(frame);
+            return RETURNED;
+        }
+    }
+
+    static final class ReturnDouble extends Instruction {
+        final Node value;
+        ReturnDouble(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.doubleResult = value.evalDouble(frame);
+            return RETURNED;
+        }
+    }
+
+    static final class ReturnBoolean extends Instruction {
+        final Node value;
+        ReturnBoolean(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.booleanResult = value.evalBoolean(frame);
+            return RETURNED;
+        }
+    }
+
+    static final class ReturnObject extends Instruction {
+        final Node value;
+        ReturnObject(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            frame.objectResult = value.evalObject(frame);
+            return RETURNED;
+        }
+    }
+
+    static final class ReturnVoid extends Instruction {
+        int execute(Frame frame, StringBuilder output, int pc) { return RETURNED; }
+    }
+
+    static final class Print extends Instruction {
+        final Node value;
+        Print(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            // Values are appended in place, so drop any partial line if one of them fails
+            int start = output.length();
+            try {
+                value.appendTo(output, frame);
+            } catch (RuntimeException e) {
+                output.setLength(start);
+                throw e;
+            }
+            output.append("\n");
+            return pc + 1;
+        }
+    }
+
+    static final class PrintLine extends Instruction {
+        final Node value;
+        PrintLine(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            StringBuilder line = new StringBuilder();
+            value.appendTo(line, frame);
+            output.append(line).append("\n");
+            return pc + 1;
+        }
+    }
+
+    static final class PrintNonNull extends Instruction {
+        final Node value;
+        PrintNonNull(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            Object result = value.evalObject(frame);
+            if (result != null) {
+                output.append(result).append("\n");
+            }
+            return pc + 1;
+        }
+    }
+
+    static final class Evaluate extends Instruction {
+        final Node value;
+        Evaluate(Node value) { this.value = value; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            value.evalObject(frame);
+            return pc + 1;
+        }
+    }
+
+    static final class Output extends Instruction {
+        final String text;
+        Output(String text) { this.text = text; }
+
+        int execute(Frame frame, StringBuilder output, int pc) {
+            output.append(text).append("\n");
+            return pc + 1;
+        }
+    }
+
+    // A statement rejected by TypeChecker fails when it is reached, like the original line-by-line runner
+    static final class Fail extends Instruction {
+        final String message;
+        Fail(String message) { this.message = message; }
+        int execute(Frame frame, StringBuilder output, int pc) { throw new CompileError(message); }
+    }
+
+    static final class CompileError extends RuntimeException {
+        CompileError(String message) {
+            super(message);
+        }
+    }
+}
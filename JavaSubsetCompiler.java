@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Front door to the compiler, shared by the UI and the command line runner. Holds no state between
+// programs apart from the backend choice and the cache of compiled programs, so one instance can
+// compile and run on many threads.
+@SuppressWarnings("try") // profile spans are opened only to time the blocks they cover
+class JavaSubsetCompiler {
+    static final int CACHE_CAPACITY = 64;
+
+    // Run programs as generated JVM classes instead of interpreting them (-Dcompiler.bytecode=true)
+    private volatile boolean bytecodeBackend = Boolean.getBoolean("compiler.bytecode");
+    private volatile ProgramCache cache = new ProgramCache(CACHE_CAPACITY);
+
+    public void setBytecodeBackend(boolean enabled) {
+        bytecodeBackend = enabled;
+    }
+
+    // Source compiled before comes from the cache; null compiles everything afresh
+    public void setCache(ProgramCache cache) {
+        this.cache = cache;
+    }
+
+    public ProgramCache cache() {
+        return cache;
+    }
+
+    // Lexes and parses the source once; the resulting program can be executed repeatedly
+    public Ast.Program compile(String code) {
+        return compile(code, null);
+    }
+
+    // With a profile, the compiler phases are timed into it and the program returned records its runs
+    // there too. That program belongs to the caller; the cache keeps the uninstrumented one.
+    public Ast.Program compile(String code, Profile profile) {
+        ProgramCache cache = this.cache;
+        if (cache == null) {
+            return instrument(check(parse(LexicalAnalyzer.stream(code), profile), profile), profile);
+        }
+        String key;
+        Ast.Program program;
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.CACHE)) {
+            key = ProgramCache.key(code);
+            program = cache.get(key);
+        }
+        if (program == null) {
+            program = check(parse(LexicalAnalyzer.stream(code), profile), profile);
+            cache.put(key, program);
+        }
+        return instrument(program, profile);
+    }
+
+    // Streams the file through the lexer without loading it into memory first
+    public Ast.Program compile(Path file) throws IOException {
+        return compile(file, null);
+    }
+
+    public Ast.Program compile(Path file, Profile profile) throws IOException {
+        ProgramCache cache = this.cache;
+        if (cache == null) {
+            return instrument(compileFile(file, profile), profile);
+        }
+        FileTime modified;
+        String key;
+        Ast.Program program;
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.CACHE)) {
+            modified = Files.getLastModifiedTime(file);
+            key = ProgramCache.key(file);
+            program = cache.get(key);
+        }
+        if (program == null) {
+            program = compileFile(file, profile);
+            // A file rewritten while it was read may not match its hash
+            if (modified.equals(Files.getLastModifiedTime(file))) {
+                cache.put(key, program);
+            }
+        }
+        return instrument(program, profile);
+    }
+
+    private static Ast.Program compileFile(Path file, Profile profile) throws IOException {
+        try (LexicalAnalyzer.TokenStream tokens = LexicalAnalyzer.stream(file)) {
+            return check(parse(tokens, profile), profile);
+        }
+    }
+
+    // Checks statements parsed elsewhere, such as by the editor's IncrementalAnalysis, and compiles them
+    // for the current backend right away, so running the program reads none of the syntax tree the
+    // editor keeps reusing and re-checking
+    public Ast.Program compile(List<Ast.Stmt> statements) {
+        return compile(statements, null);
+    }
+
+    public Ast.Program compile(List<Ast.Stmt> statements, Profile profile) {
+        Ast.Program program = check(new Ast.Program(new ArrayList<>(statements)), profile);
+        if (profile != null) {
+            return instrument(program, profile);
+        }
+        if (bytecodeBackend) {
+            script(program);
+        }
+        return program;
+    }
+
+    private static Ast.Program parse(Iterator<LexicalAnalyzer.Token> tokens, Profile profile) {
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.PARSE)) {
+            return new Parser(profile != null ? profile.lexing(tokens) : tokens).parseProgram();
+        }
+    }
+
+    // Resolves types, builtins and variable slots once so execution does no name lookups, then
+    // optimizes. The result is complete and immutable from here on, and safe to share between threads.
+    private static Ast.Program check(Ast.Program program, Profile profile) {
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.CHECK)) {
+            program.errors = new TypeChecker().check(program);
+        }
+        Ast.Program optimized;
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.OPTIMIZE)) {
+            optimized = Optimizer.optimize(program);
+        }
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.PREPARE)) {
+            Interpreter.prepare(optimized);
+        }
+        return optimized;
+    }
+
+    // A copy of a checked program with code that records into the profile. It is interpreted whatever the
+    // backend, as only the interpreter's instructions map back to statements.
+    private static Ast.Program instrument(Ast.Program program, Profile profile) {
+        if (profile == null) {
+            return program;
+        }
+        try (Profile.Span span = Profile.start(profile, Profile.Phase.INSTRUMENT)) {
+            Ast.Program instrumented = new Ast.Program(program.statements);
+            instrumented.intSlots = program.intSlots;
+            instrumented.doubleSlots = program.doubleSlots;
+            instrumented.booleanSlots = program.booleanSlots;
+            instrumented.objectSlots = program.objectSlots;
+            instrumented.errors = program.errors;
+            instrumented.code = Interpreter.compile(program.statements, profile);
+            instrumented.profile = profile;
+            return instrumented;
+        }
+    }
+
+    // Throws UnsupportedOperationException if the program cannot be turned into a class
+    public BytecodeCompiler.Script compileToBytecode(Ast.Program program) {
+        return BytecodeCompiler.compile(program);
+    }
+
+    // Appends the program's output and returns the number of runtime errors it reported
+    public int execute(Ast.Program program, StringBuilder output) {
+        return execute(program, output, null);
+    }
+
+    // The monitor sees the output as it grows and can stop the program by throwing
+    public int execute(Ast.Program program, StringBuilder output, ExecutionMonitor monitor) {
+        int errors = 0;
+        try {
+            if (program.profile != null) {
+                try (Profile.Span span = Profile.start(program.profile, Profile.Phase.RUN)) {
+                    errors = new Interpreter().execute(program, output, monitor);
+                }
+            } else if (bytecodeBackend) {
+                errors = script(program).run(output, monitor);
+            } else {
+                errors = new Interpreter().execute(program, output, monitor);
+            }
+        } finally {
+            // Files the script left open are flushed and closed with the run, even when it was stopped
+            errors += FileHandles.release(output);
+        }
+        return errors;
+    }
+
+    // Generated once per program; a program the backend cannot handle gets a script that interprets it
+    private BytecodeCompiler.Script script(Ast.Program program) {
+        BytecodeCompiler.Script script = program.script;
+        if (script == null) {
+            try {
+                script = compileToBytecode(program);
+            } catch (UnsupportedOperationException e) {
+                script = (output, monitor) -> new Interpreter().execute(program, output, monitor);
+            }
+            program.script = script;
+        }
+        return script;
+    }
+
+    public String execute(Ast.Program program) {
+        StringBuilder output = new StringBuilder();
+        execute(program, output);
+        return output.toString().trim();
+    }
+
+    public String analyzeAndExecute(String code) {
+        return execute(compile(code));
+    }
+}
@@ -1,15 +1,47 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.*;
+import java.util.NoSuchElementException;
 
 public class LexicalAnalyzer {
+    public enum TokenType { FUNCTION, KEYWORD, LITERAL, IDENTIFIER, OPERATOR, SEPARATOR, UNKNOWN }
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
     public static class Token {
-        public final String type;
+        public final TokenType type;
         public final String value;
+        public final int line;
+        public final int column;
+        public final long offset;  // position of the token in the source, in chars
         
-        public Token(String type, String value) {
+        public Token(TokenType type, String value) {
+            this(type, value, 0, 0, -1);
+        }
+
+        public Token(TokenType type, String value, int line, int column, long offset) {
             this.type = type;
             this.value = value;
+            this.line = line;
+            this.column = column;
+            this.offset = offset;
+        }
+
+        public int length() {
+            return value.length();
         }
         
         @Override
@@ -18,58 +50,420 @@ public class LexicalAnalyzer {
         }
     }
 
-    // List of all functions that should be treated as keywords
-    private static final String[] FUNCTION_KEYWORDS = {
-        "print", "concat", "len", "toUpperCase", "toLowerCase", "replace",
-        "charAt", "equals", "equalsIgnoreCase", "contains", "startsWith",
-        "endsWith", "split", "toString", "add", "subtract", "multiply",
-        "divide", "modulus", "max", "min", "power", "absoluteValue", "round",
-        "floor", "ceil", "log", "sqrt", "cbrt", "sin", "cos", "tan", "exists",
-        "readFile", "fileWriter", "openFile", "closeFile", "isEmpty", "fileLength",
-        "listFiles", "getProperty", "setReadable", "setWritable", "availableProcessors",
-        "destroy"
+    private static final String[] KEYWORDS = {
+        "int", "String", "double", "boolean", "if", "else", "while", "return", "void"
     };
 
+    // Character classes for the scanner; everything outside ASCII is OTHER
+    private static final byte OTHER = 0, SPACE = 1, LETTER = 2, DIGIT = 3, OPERATOR = 4, SEPARATOR = 5, QUOTE = 6;
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char c : " \t\n\u000B\f\r".toCharArray()) CHAR_CLASS[c] = SPACE;
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = LETTER;
+        CHAR_CLASS['_'] = LETTER;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = DIGIT;
+        for (char c : "+-*/%=<>!&|".toCharArray()) CHAR_CLASS[c] = OPERATOR;
+        for (char c : "();{},[]".toCharArray()) CHAR_CLASS[c] = SEPARATOR;
+        CHAR_CLASS['"'] = QUOTE;
+    }
+
+    // Materializes the whole token stream; prefer stream() or tokenize() for large inputs
     public static List<Token> analyze(String code) {
         List<Token> tokens = new ArrayList<>();
-        
-        // Remove comments
-        code = code.replaceAll("//.*|/\\*.*?\\*/", "");
-        
-        // Build keyword pattern
-        String keywordPattern = String.join("|", FUNCTION_KEYWORDS);
-        
-        // Token patterns - now matches function calls specifically
-        String regex = "(?<FUNCTION>\\b(?:" + keywordPattern + ")\\b(?=\\s*\\())" +  // Function calls
-                     "|(?<KEYWORD>\\b(?:int|String|double|boolean|if|else|while|return)\\b)" +
-                     "|(?<LITERAL>\"[^\"]*\"|\\d+\\.\\d+|\\d+|true|false)" +
-                     "|(?<IDENTIFIER>[a-zA-Z_]\\w*)" +
-                     "|(?<OPERATOR>[+\\-*/%=<>!&|]+)" +
-                     "|(?<SEPARATOR>[();{},])" +
-                     "|(?<WHITESPACE>\\s+)" +
-                     "|(?<UNKNOWN>.)";
-        
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(code);
-        
-        while (matcher.find()) {
-            if (matcher.group("FUNCTION") != null) {
-                tokens.add(new Token("FUNCTION", matcher.group("FUNCTION")));
-            } else if (matcher.group("KEYWORD") != null) {
-                tokens.add(new Token("KEYWORD", matcher.group("KEYWORD")));
-            } else if (matcher.group("LITERAL") != null) {
-                tokens.add(new Token("LITERAL", matcher.group("LITERAL")));
-            } else if (matcher.group("IDENTIFIER") != null) {
-                tokens.add(new Token("IDENTIFIER", matcher.group("IDENTIFIER")));
-            } else if (matcher.group("OPERATOR") != null) {
-                tokens.add(new Token("OPERATOR", matcher.group("OPERATOR")));
-            } else if (matcher.group("SEPARATOR") != null) {
-                tokens.add(new Token("SEPARATOR", matcher.group("SEPARATOR")));
-            } else if (matcher.group("WHITESPACE") == null) {
-                tokens.add(new Token("UNKNOWN", matcher.group()));
+        stream(code).forEachRemaining(tokens::add);
+        return tokens;
+    }
+
+    public static TokenStream stream(CharSequence code) {
+        return new TokenStream(code, null);
+    }
+
+    public static TokenStream stream(Reader reader) {
+        return new TokenStream(null, reader);
+    }
+
+    // Tokenizes a UTF-8 file through a memory mapping, decoding it a window at a time
+    public static TokenStream stream(Path file) throws IOException {
+        return new TokenStream(null, new MappedFileReader(file));
+    }
+
+    // Tokenizes into primitive arrays without creating a Token object per token
+    public static TokenBuffer tokenize(CharSequence code) {
+        TokenStream scanner = new TokenStream(code, null);
+        TokenBuffer buffer = new TokenBuffer(code, scanner.symbols);
+        int kind;
+        while ((kind = scanner.scan()) >= 0) {
+            buffer.add(kind, (int) scanner.tokenStart, (int) (scanner.pos - scanner.tokenStart),
+                    scanner.tokenLine, scanner.tokenColumn, scanner.tokenSymbol);
+        }
+        return buffer;
+    }
+
+    // Keywords and builtin names are classified once; every scanner starts from a copy
+    private static final SymbolTable PREDEFINED = predefined();
+
+    static SymbolTable newSymbolTable() {
+        return PREDEFINED.copy();
+    }
+
+    private static SymbolTable predefined() {
+        SymbolTable symbols = new SymbolTable();
+        for (String function : FunctionRegistry.names()) symbols.define(function, SymbolTable.FUNCTION);
+        for (String keyword : KEYWORDS) symbols.define(keyword, SymbolTable.KEYWORD);
+        symbols.define("true", SymbolTable.BOOLEAN);
+        symbols.define("false", SymbolTable.BOOLEAN);
+        return symbols;
+    }
+
+    private static byte charClass(int c) {
+        return c >= 0 && c < 128 ? CHAR_CLASS[c] : OTHER;
+    }
+
+    // Struct-of-arrays token storage: kind, offset/length slice into the source, position and symbol id
+    public static final class TokenBuffer {
+        private final CharSequence source;
+        private final SymbolTable symbols;
+        private byte[] kinds = new byte[1024];
+        private int[] offsets = new int[1024];
+        private int[] lengths = new int[1024];
+        private int[] lines = new int[1024];
+        private int[] columns = new int[1024];
+        private int[] symbolIds = new int[1024];
+        private int size;
+
+        private TokenBuffer(CharSequence source, SymbolTable symbols) {
+            this.source = source;
+            this.symbols = symbols;
+        }
+
+        private void add(int kind, int offset, int length, int line, int column, int symbol) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+                symbolIds = Arrays.copyOf(symbolIds, capacity);
             }
+            kinds[size] = (byte) kind;
+            offsets[size] = offset;
+            lengths[size] = length;
+            lines[size] = line;
+            columns[size] = column;
+            symbolIds[size] = symbol;
+            size++;
+        }
+
+        public int size() { return size; }
+        public TokenType type(int index) { return TOKEN_TYPES[kinds[index]]; }
+        public int offset(int index) { return offsets[index]; }
+        public int length(int index) { return lengths[index]; }
+        public int line(int index) { return lines[index]; }
+        public int column(int index) { return columns[index]; }
+        public int symbol(int index) { return symbolIds[index]; }
+
+        // Interned names are shared; literal text is only copied out of the source when asked for
+        public String text(int index) {
+            int symbol = symbolIds[index];
+            if (symbol >= 0) return symbols.name(symbol);
+            return source.subSequence(offsets[index], offsets[index] + lengths[index]).toString();
+        }
+
+        public Token get(int index) {
+            return new Token(type(index), text(index), lines[index], columns[index], offsets[index]);
+        }
+    }
+
+    // Single pass, pull based scanner. Input is read through a sliding buffer that only keeps the
+    // current token, so memory stays constant; whitespace and comments are skipped without allocating.
+    public static final class TokenStream implements Iterator<Token>, Closeable {
+        private static final int EOF = -1;
+
+        private final CharSequence source;
+        private final Reader reader;
+        private int sourcePos;
+        private boolean exhausted;
+        private final SymbolTable symbols = newSymbolTable();
+
+        private char[] buf = new char[8192];
+        private int limit;
+        private long base;  // absolute offset of buf[0]
+        private long mark;  // start of the current token; nothing before it is kept
+        private long pos;
+        private int line = 1;
+        private long lineStart;
+        private Token pending;
+
+        // The token found by the last scan()
+        private long tokenStart;
+        private int tokenLine, tokenColumn, tokenSymbol;
+
+        private TokenStream(CharSequence source, Reader reader) {
+            this.source = source;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null) {
+                int kind = scan();
+                if (kind >= 0) {
+                    String value = tokenSymbol >= 0 ? symbols.name(tokenSymbol)
+                            : new String(buf, (int) (tokenStart - base), (int) (pos - tokenStart));
+                    pending = new Token(TOKEN_TYPES[kind], value, tokenLine, tokenColumn, tokenStart);
+                }
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Token token = pending;
+            pending = null;
+            return token;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) reader.close();
+        }
+
+        // Scans the next token into the token fields and returns its TokenType ordinal, or EOF
+        private int scan() {
+            while (true) {
+                mark = pos;
+                int c = at(pos);
+                if (c == EOF) return EOF;
+                byte type = charClass(c);
+
+                if (type == SPACE) {
+                    if (c == '\n') newLine(pos);
+                    pos++;
+                    continue;
+                }
+                if (c == '/') {
+                    int following = at(pos + 1);
+                    if (following == '/') {
+                        skipLineComment();
+                        continue;
+                    }
+                    if (following == '*') {
+                        skipBlockComment();
+                        continue;
+                    }
+                }
+
+                tokenStart = pos;
+                tokenLine = line;
+                tokenColumn = (int) (pos - lineStart + 1);
+                tokenSymbol = -1;
+                switch (type) {
+                    case LETTER:
+                        return word();
+                    case DIGIT:
+                        return number();
+                    case QUOTE:
+                        return string();
+                    case OPERATOR:
+                        // Operator runs stop where a comment begins
+                        do {
+                            pos++;
+                        } while (charClass(at(pos)) == OPERATOR && !commentAt(pos));
+                        return intern(TokenType.OPERATOR);
+                    case SEPARATOR:
+                        pos++;
+                        return intern(TokenType.SEPARATOR);
+                    default:
+                        pos += Character.isHighSurrogate((char) c) && Character.isLowSurrogate((char) at(pos + 1)) ? 2 : 1;
+                        return intern(TokenType.UNKNOWN);
+                }
+            }
+        }
+
+        private int word() {
+            byte type = charClass(at(pos));
+            while (type == LETTER || type == DIGIT) {
+                pos++;
+                type = charClass(at(pos));
+            }
+            intern(TokenType.IDENTIFIER);
+            switch (symbols.category(tokenSymbol)) {
+                case SymbolTable.FUNCTION:
+                    return nextNonSpaceIs('(') ? TokenType.FUNCTION.ordinal() : TokenType.IDENTIFIER.ordinal();
+                case SymbolTable.KEYWORD:
+                    return TokenType.KEYWORD.ordinal();
+                case SymbolTable.BOOLEAN:
+                    return TokenType.LITERAL.ordinal();
+                default:
+                    return TokenType.IDENTIFIER.ordinal();
+            }
+        }
+
+        private int number() {
+            while (charClass(at(pos)) == DIGIT) pos++;
+            if (at(pos) == '.' && charClass(at(pos + 1)) == DIGIT) {
+                pos++;
+                while (charClass(at(pos)) == DIGIT) pos++;
+            }
+            return TokenType.LITERAL.ordinal();
+        }
+
+        private int string() {
+            long close = pos + 1;
+            int c;
+            while ((c = at(close)) != '"' && c != EOF) close++;
+            if (c == EOF) {
+                // Unterminated string: report the quote on its own and carry on after it
+                pos++;
+                return intern(TokenType.UNKNOWN);
+            }
+            for (long i = pos + 1; i < close; i++) {
+                if (at(i) == '\n') newLine(i);
+            }
+            pos = close + 1;
+            return TokenType.LITERAL.ordinal();
+        }
+
+        private int intern(TokenType type) {
+            tokenSymbol = symbols.lookup(buf, (int) (tokenStart - base), (int) (pos - tokenStart));
+            return type.ordinal();
+        }
+
+        private void skipLineComment() {
+            int c;
+            while ((c = at(pos)) != '\n' && c != EOF) {
+                mark = ++pos;
+            }
+        }
+
+        private void skipBlockComment() {
+            pos += 2;
+            int c;
+            while ((c = at(pos)) != EOF && !(c == '*' && at(pos + 1) == '/')) {
+                if (c == '\n') newLine(pos);
+                mark = ++pos;
+            }
+            if (c != EOF) pos += 2;
+        }
+
+        private boolean commentAt(long index) {
+            if (at(index) != '/') return false;
+            int following = at(index + 1);
+            return following == '/' || following == '*';
+        }
+
+        private boolean nextNonSpaceIs(char expected) {
+            for (long i = pos; ; i++) {
+                int c = at(i);
+                if (charClass(c) != SPACE) return c == expected;
+            }
+        }
+
+        private void newLine(long newlineIndex) {
+            line++;
+            lineStart = newlineIndex + 1;
+        }
+
+        // Character at an absolute offset at or after mark, or EOF
+        private int at(long index) {
+            while (index - base >= limit) {
+                if (!fill()) return EOF;
+            }
+            return buf[(int) (index - base)];
+        }
+
+        private boolean fill() {
+            if (exhausted) return false;
+            // Drop everything before the current token, growing only if the token fills the buffer
+            int keep = (int) (mark - base);
+            if (keep > 0) {
+                System.arraycopy(buf, keep, buf, 0, limit - keep);
+                limit -= keep;
+                base = mark;
+            }
+            if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            int read;
+            if (source != null) {
+                read = Math.min(buf.length - limit, source.length() - sourcePos);
+                for (int i = 0; i < read; i++) {
+                    buf[limit + i] = source.charAt(sourcePos + i);
+                }
+                sourcePos += read;
+                if (read == 0) read = -1;
+            } else {
+                try {
+                    read = reader.read(buf, limit, buf.length - limit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (read <= 0) {
+                exhausted = read < 0;
+                return !exhausted;
+            }
+            limit += read;
+            return true;
+        }
+    }
+
+    // Reader over a memory-mapped file. The file is mapped in windows so inputs larger than 2 GB work too.
+    private static final class MappedFileReader extends Reader {
+        private static final long WINDOW = 64L << 20;
+
+        private final FileChannel channel;
+        private final long size;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private MappedByteBuffer window;
+        private long windowStart;
+        private boolean flushed;
+
+        MappedFileReader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+            map(0);
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            CharBuffer out = CharBuffer.wrap(chars, offset, length);
+            while (out.position() == offset) {
+                boolean last = windowStart + window.capacity() >= size;
+                decoder.decode(window, out, last);
+                if (out.position() > offset) break;
+                if (!last) {
+                    // Remap from the first undecoded byte so split characters are completed
+                    map(windowStart + window.position());
+                } else {
+                    if (!flushed) {
+                        flushed = true;
+                        decoder.flush(out);
+                        if (out.position() > offset) break;
+                    }
+                    return -1;
+                }
+            }
+            return out.position() - offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
         }
-        
-        return tokens;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,689 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntBinaryOperator;
+
+// Compiled form of an expression. Each node is specialised for its static type and bound to its frame
+// slot or builtin, so evaluating it is a virtual call per node with no lookups and no boxing.
+abstract class Node {
+    abstract int evalInt(Frame frame);
+    abstract long evalLong(Frame frame);
+    abstract double evalDouble(Frame frame);
+    abstract boolean evalBoolean(Frame frame);
+    abstract Object evalObject(Frame frame);
+
+    void appendTo(StringBuilder out, Frame frame) {
+        out.append(evalObject(frame));
+    }
+
+    static Node compile(Ast.Expr expr) {
+        return compile(expr, new Interpreter.Compilation(List.of(), null));
+    }
+
+    // With a profile, builtin calls go through functions that time them
+    static Node compile(Ast.Expr expr, Interpreter.Compilation compilation) {
+        Profile profile = compilation.profile;
+        if (expr instanceof Ast.Literal) {
+            Object value = ((Ast.Literal) expr).value;
+            switch (expr.type) {
+                case INT: return new IntConst((Integer) value);
+                case DOUBLE: return new DoubleConst((Double) value);
+                case BOOLEAN: return new BooleanConst((Boolean) value);
+                default: return new ObjectConst(value);
+            }
+        }
+        if (expr instanceof Ast.Variable) {
+            Node argument = compilation.argument((Ast.Variable) expr);
+            if (argument != null) return argument;
+            int slot = ((Ast.Variable) expr).slot;
+            switch (expr.type) {
+                case INT: return new IntVar(slot);
+                case DOUBLE: return new DoubleVar(slot);
+                case BOOLEAN: return new BooleanVar(slot);
+                case STRING: return new StringVar(slot);
+                default: return new ObjectVar(slot);
+            }
+        }
+        if (expr instanceof Ast.Unary) {
+            Ast.Unary unary = (Ast.Unary) expr;
+            Node operand = compile(unary.operand, compilation);
+            if (unary.op.equals("!")) return new Not(operand);
+            switch (expr.type) {
+                case INT: return new IntNeg(operand);
+                case LONG: return new LongNeg(operand);
+                default: return new DoubleNeg(operand);
+            }
+        }
+        if (expr instanceof Ast.Binary) {
+            Ast.Binary binary = (Ast.Binary) expr;
+            if (binary.type == Ast.Type.BOOLEAN) {
+                return compileCondition(binary, compilation);
+            }
+            if (binary.type == Ast.Type.STRING) {
+                List<Node> parts = new ArrayList<>();
+                flattenConcat(binary, parts, compilation);
+                return new Concat(parts.toArray(new Node[0]));
+            }
+            Node left = compile(binary.left, compilation), right = compile(binary.right, compilation);
+            char op = binary.op.charAt(0);
+            switch (binary.type) {
+                case INT: return new IntBinary(op, left, right);
+                case LONG: return new LongBinary(op, left, right);
+                default: return new DoubleBinary(op, left, right);
+            }
+        }
+        Ast.Call call = (Ast.Call) expr;
+        Node[] args = new Node[call.args.size()];
+        if (call.function == null) {
+            for (int i = 0; i < args.length; i++) {
+                args[i] = compile(call.args.get(i), compilation);
+            }
+            return compileUserCall(call, args, compilation);
+        }
+        Class<?>[] params = call.function.method.getParameterTypes();
+        for (int i = 0; i < args.length; i++) {
+            Ast.Expr arg = call.args.get(i);
+            // A string variable still being appended to is passed as it is, without flattening it
+            args[i] = params[i] == CharSequence.class && arg instanceof Ast.Variable
+                    && compilation.argument((Ast.Variable) arg) == null
+                    ? new ObjectVar(((Ast.Variable) arg).slot) : compile(arg, compilation);
+        }
+        if (profile == null && call.function.direct != null) {
+            return compileDirect(call.function.direct, args);
+        }
+        FunctionRegistry.Function function = profile != null ? profile.timed(call.function) : call.function;
+        switch (expr.type) {
+            case INT: return new IntCall(function, args);
+            case LONG: return new LongCall(function, args);
+            case DOUBLE: return new DoubleCall(function, args);
+            case BOOLEAN: return new BooleanCall(function, args);
+            default: return new ObjectCall(function, args);
+        }
+    }
+
+    // A call of a function declared in the program is bound to its routine here, once, so running it
+    // involves no lookup. Small functions are inlined instead.
+    private static Node compileUserCall(Ast.Call call, Node[] args, Interpreter.Compilation compilation) {
+        Interpreter.Routine routine = compilation.routine(call.name);
+        Node inlined = compilation.inline(routine, call, args);
+        if (inlined != null) return inlined;
+        switch (call.type) {
+            case INT: return new IntUserCall(routine, args);
+            case DOUBLE: return new DoubleUserCall(routine, args);
+            case BOOLEAN: return new BooleanUserCall(routine, args);
+            default: return new ObjectUserCall(routine, args);
+        }
+    }
+
+    // The node converting a value of one type to another as an assignment would, for an int passed
+    // where a double is declared and the like
+    static Node convert(Node node, Ast.Type from, Ast.Type to) {
+        if (from == to) return node;
+        if (to == Ast.Type.INT) return new AsInt(node);
+        if (to == Ast.Type.DOUBLE) return new AsDouble(node);
+        return node;
+    }
+
+    // The Frame array a variable of the type lives in, as the type it holds
+    static Ast.Type kind(Ast.Type type) {
+        switch (type) {
+            case INT: case DOUBLE: case BOOLEAN: return type;
+            default: return Ast.Type.OBJECT;
+        }
+    }
+
+    // Numeric builtins take and return primitives directly
+    private static Node compileDirect(Object direct, Node[] args) {
+        if (direct instanceof DoubleUnaryOperator) return new DoubleUnaryCall((DoubleUnaryOperator) direct, args[0]);
+        if (direct instanceof DoubleBinaryOperator) {
+            return new DoubleBinaryCall((DoubleBinaryOperator) direct, args[0], args[1]);
+        }
+        if (direct instanceof IntBinaryOperator) return new IntBinaryCall((IntBinaryOperator) direct, args[0], args[1]);
+        return new IntsToDoubleCall((FunctionRegistry.IntsToDouble) direct, args[0], args[1]);
+    }
+
+    private static Node compileCondition(Ast.Binary binary, Interpreter.Compilation compilation) {
+        Node left = compile(binary.left, compilation), right = compile(binary.right, compilation);
+        if (binary.op.equals("&&")) return new And(left, right);
+        if (binary.op.equals("||")) return new Or(left, right);
+        int comparison = comparison(binary.op);
+        switch (TypeChecker.comparisonType(binary.left.type, binary.right.type)) {
+            case INT: return new IntCompare(comparison, left, right);
+            case LONG: return new LongCompare(comparison, left, right);
+            case DOUBLE: return new DoubleCompare(comparison, left, right);
+            case BOOLEAN: return new BooleanCompare(comparison, left, right);
+            default: return new ReferenceCompare(comparison, left, right);
+        }
+    }
+
+    // Comparison codes, in the order of the JVM's ifeq..ifle opcodes; code ^ 1 is the negation
+    static final int EQ = 0, NE = 1, LT = 2, GE = 3, GT = 4, LE = 5;
+
+    static int comparison(String op) {
+        switch (op) {
+            case "==": return EQ;
+            case "!=": return NE;
+            case "<": return LT;
+            case ">=": return GE;
+            case ">": return GT;
+            case "<=": return LE;
+            default: throw new IllegalArgumentException("Not a comparison: " + op);
+        }
+    }
+
+    private static boolean test(int comparison, int sign) {
+        switch (comparison) {
+            case EQ: return sign == 0;
+            case NE: return sign != 0;
+            case LT: return sign < 0;
+            case GE: return sign >= 0;
+            case GT: return sign > 0;
+            default: return sign <= 0;
+        }
+    }
+
+    // "a" + b + c becomes one node that appends every part to a single builder
+    private static void flattenConcat(Ast.Expr expr, List<Node> parts, Interpreter.Compilation compilation) {
+        if (expr instanceof Ast.Binary && expr.type == Ast.Type.STRING) {
+            Ast.Binary binary = (Ast.Binary) expr;
+            flattenConcat(binary.left, parts, compilation);
+            flattenConcat(binary.right, parts, compilation);
+        } else {
+            parts.add(compile(expr, compilation));
+        }
+    }
+
+    // Result categories; each converts its value the way a Java assignment or concatenation would
+    abstract static class IntNode extends Node {
+        long evalLong(Frame frame) { return evalInt(frame); }
+        double evalDouble(Frame frame) { return evalInt(frame); }
+        boolean evalBoolean(Frame frame) { throw new IllegalStateException("int used as boolean"); }
+        Object evalObject(Frame frame) { return evalInt(frame); }
+        void appendTo(StringBuilder out, Frame frame) { out.append(evalInt(frame)); }
+    }
+
+    abstract static class LongNode extends Node {
+        int evalInt(Frame frame) { return (int) evalLong(frame); }
+        double evalDouble(Frame frame) { return evalLong(frame); }
+        boolean evalBoolean(Frame frame) { throw new IllegalStateException("long used as boolean"); }
+        Object evalObject(Frame frame) { return evalLong(frame); }
+        void appendTo(StringBuilder out, Frame frame) { out.append(evalLong(frame)); }
+    }
+
+    abstract static class DoubleNode extends Node {
+        int evalInt(Frame frame) { return (int) evalDouble(frame); }
+        long evalLong(Frame frame) { return (long) evalDouble(frame); }
+        boolean evalBoolean(Frame frame) { throw new IllegalStateException("double used as boolean"); }
+        Object evalObject(Frame frame) { return evalDouble(frame); }
+        void appendTo(StringBuilder out, Frame frame) { out.append(evalDouble(frame)); }
+    }
+
+    abstract static class BooleanNode extends Node {
+        int evalInt(Frame frame) { throw new IllegalStateException("boolean used as int"); }
+        long evalLong(Frame frame) { throw new IllegalStateException("boolean used as long"); }
+        double evalDouble(Frame frame) { throw new IllegalStateException("boolean used as double"); }
+        Object evalObject(Frame frame) { return evalBoolean(frame); }
+        void appendTo(StringBuilder out, Frame frame) { out.append(evalBoolean(frame)); }
+    }
+
+    abstract static class ObjectNode extends Node {
+        int evalInt(Frame frame) { return ((Number) evalObject(frame)).intValue(); }
+        long evalLong(Frame frame) { return ((Number) evalObject(frame)).longValue(); }
+        double evalDouble(Frame frame) { return ((Number) evalObject(frame)).doubleValue(); }
+        boolean evalBoolean(Frame frame) { return (Boolean) evalObject(frame); }
+    }
+
+    // Constants and variables
+    static final class IntConst extends IntNode {
+        final int value;
+        IntConst(int value) { this.value = value; }
+        int evalInt(Frame frame) { return value; }
+    }
+
+    static final class DoubleConst extends DoubleNode {
+        final double value;
+        DoubleConst(double value) { this.value = value; }
+        double evalDouble(Frame frame) { return value; }
+    }
+
+    static final class BooleanConst extends BooleanNode {
+        final boolean value;
+        BooleanConst(boolean value) { this.value = value; }
+        boolean evalBoolean(Frame frame) { return value; }
+    }
+
+    static final class ObjectConst extends ObjectNode {
+        final Object value;
+        ObjectConst(Object value) { this.value = value; }
+        Object evalObject(Frame frame) { return value; }
+    }
+
+    static final class IntVar extends IntNode {
+        final int slot;
+        IntVar(int slot) { this.slot = slot; }
+        int evalInt(Frame frame) { return frame.ints[slot]; }
+    }
+
+    static final class DoubleVar extends DoubleNode {
+        final int slot;
+        DoubleVar(int slot) { this.slot = slot; }
+        double evalDouble(Frame frame) { return frame.doubles[slot]; }
+    }
+
+    static final class BooleanVar extends BooleanNode {
+        final int slot;
+        BooleanVar(int slot) { this.slot = slot; }
+        boolean evalBoolean(Frame frame) { return frame.booleans[slot]; }
+    }
+
+    static final class ObjectVar extends ObjectNode {
+        final int slot;
+        ObjectVar(int slot) { this.slot = slot; }
+        Object evalObject(Frame frame) { return frame.objects[slot]; }
+    }
+
+    // The slot may hold a GrowingString, which readers see as the String it stands for
+    static final class StringVar extends ObjectNode {
+        final int slot;
+        StringVar(int slot) { this.slot = slot; }
+
+        Object evalObject(Frame frame) {
+            Object value = frame.objects[slot];
+            return value instanceof GrowingString ? value.toString() : value;
+        }
+
+        void appendTo(StringBuilder out, Frame frame) {
+            out.append((CharSequence) frame.objects[slot]);
+        }
+    }
+
+    static final class AsInt extends IntNode {
+        final Node value;
+        AsInt(Node value) { this.value = value; }
+        int evalInt(Frame frame) { return value.evalInt(frame); }
+    }
+
+    static final class AsDouble extends DoubleNode {
+        final Node value;
+        AsDouble(Node value) { this.value = value; }
+        double evalDouble(Frame frame) { return value.evalDouble(frame); }
+    }
+
+    // Arithmetic
+    static final class IntNeg extends IntNode {
+        final Node operand;
+        IntNeg(Node operand) { this.operand = operand; }
+        int evalInt(Frame frame) { return -operand.evalInt(frame); }
+    }
+
+    static final class LongNeg extends LongNode {
+        final Node operand;
+        LongNeg(Node operand) { this.operand = operand; }
+        long evalLong(Frame frame) { return -operand.evalLong(frame); }
+    }
+
+    static final class DoubleNeg extends DoubleNode {
+        final Node operand;
+        DoubleNeg(Node operand) { this.operand = operand; }
+        double evalDouble(Frame frame) { return -operand.evalDouble(frame); }
+    }
+
+    static final class IntBinary extends IntNode {
+        final char op;
+        final Node left, right;
+
+        IntBinary(char op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        int evalInt(Frame frame) {
+            int a = left.evalInt(frame), b = right.evalInt(frame);
+            switch (op) {
+                case '+': return a + b;
+                case '-': return a - b;
+                case '*': return a * b;
+                case '%': return a % b;
+                default: return a / b;
+            }
+        }
+    }
+
+    static final class LongBinary extends LongNode {
+        final char op;
+        final Node left, right;
+
+        LongBinary(char op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        long evalLong(Frame frame) {
+            long a = left.evalLong(frame), b = right.evalLong(frame);
+            switch (op) {
+                case '+': return a + b;
+                case '-': return a - b;
+                case '*': return a * b;
+                case '%': return a % b;
+                default: return a / b;
+            }
+        }
+    }
+
+    static final class DoubleBinary extends DoubleNode {
+        final char op;
+        final Node left, right;
+
+        DoubleBinary(char op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        double evalDouble(Frame frame) {
+            double a = left.evalDouble(frame), b = right.evalDouble(frame);
+            switch (op) {
+                case '+': return a + b;
+                case '-': return a - b;
+                case '*': return a * b;
+                case '%': return a % b;
+                default: return a / b;
+            }
+        }
+    }
+
+    // Comparisons and logic
+    static final class IntCompare extends BooleanNode {
+        final int comparison;
+        final Node left, right;
+
+        IntCompare(int comparison, Node left, Node right) {
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean evalBoolean(Frame frame) {
+            int a = left.evalInt(frame), b = right.evalInt(frame);
+            switch (comparison) {
+                case EQ: return a == b;
+                case NE: return a != b;
+                case LT: return a < b;
+                case GE: return a >= b;
+                case GT: return a > b;
+                default: return a <= b;
+            }
+        }
+    }
+
+    static final class LongCompare extends BooleanNode {
+        final int comparison;
+        final Node left, right;
+
+        LongCompare(int comparison, Node left, Node right) {
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean evalBoolean(Frame frame) {
+            return test(comparison, Long.compare(left.evalLong(frame), right.evalLong(frame)));
+        }
+    }
+
+    static final class DoubleCompare extends BooleanNode {
+        final int comparison;
+        final Node left, right;
+
+        DoubleCompare(int comparison, Node left, Node right) {
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        // Written out rather than via Double.compare so NaN compares false like in Java
+        boolean evalBoolean(Frame frame) {
+            double a = left.evalDouble(frame), b = right.evalDouble(frame);
+            switch (comparison) {
+                case EQ: return a == b;
+                case NE: return a != b;
+                case LT: return a < b;
+                case GE: return a >= b;
+                case GT: return a > b;
+                default: return a <= b;
+            }
+        }
+    }
+
+    static final class BooleanCompare extends BooleanNode {
+        final boolean equal;
+        final Node left, right;
+
+        BooleanCompare(int comparison, Node left, Node right) {
+            this.equal = comparison == EQ;
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean evalBoolean(Frame frame) {
+            return (left.evalBoolean(frame) == right.evalBoolean(frame)) == equal;
+        }
+    }
+
+    // == on strings and objects compares references, as in Java
+    static final class ReferenceCompare extends BooleanNode {
+        final boolean equal;
+        final Node left, right;
+
+        ReferenceCompare(int comparison, Node left, Node right) {
+            this.equal = comparison == EQ;
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean evalBoolean(Frame frame) {
+            return (left.evalObject(frame) == right.evalObject(frame)) == equal;
+        }
+    }
+
+    static final class And extends BooleanNode {
+        final Node left, right;
+        And(Node left, Node right) { this.left = left; this.right = right; }
+        boolean evalBoolean(Frame frame) { return left.evalBoolean(frame) && right.evalBoolean(frame); }
+    }
+
+    static final class Or extends BooleanNode {
+        final Node left, right;
+        Or(Node left, Node right) { this.left = left; this.right = right; }
+        boolean evalBoolean(Frame frame) { return left.evalBoolean(frame) || right.evalBoolean(frame); }
+    }
+
+    static final class Not extends BooleanNode {
+        final Node operand;
+        Not(Node operand) { this.operand = operand; }
+        boolean evalBoolean(Frame frame) { return !operand.evalBoolean(frame); }
+    }
+
+    // String concatenation
+    static final class Concat extends ObjectNode {
+        final Node[] parts;
+        Concat(Node[] parts) { this.parts = parts; }
+
+        Object evalObject(Frame frame) {
+            StringBuilder out = new StringBuilder();
+            appendTo(out, frame);
+            return out.toString();
+        }
+
+        void appendTo(StringBuilder out, Frame frame) {
+            for (Node part : parts) {
+                part.appendTo(out, frame);
+            }
+        }
+    }
+
+    // Builtin calls through the call site's pre-resolved MethodHandle
+    static Object[] evalArgs(Node[] args, Frame frame) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = args[i].evalObject(frame);
+        }
+        return values;
+    }
+
+    static final class IntCall extends IntNode {
+        final FunctionRegistry.Function function;
+        final Node[] args;
+        IntCall(FunctionRegistry.Function function, Node[] args) { this.function = function; this.args = args; }
+        int evalInt(Frame frame) { return (Integer) function.invoke(evalArgs(args, frame)); }
+    }
+
+    static final class LongCall extends LongNode {
+        final FunctionRegistry.Function function;
+        final Node[] args;
+        LongCall(FunctionRegistry.Function function, Node[] args) { this.function = function; this.args = args; }
+        long evalLong(Frame frame) { return (Long) function.invoke(evalArgs(args, frame)); }
+    }
+
+    static final class DoubleCall extends DoubleNode {
+        final FunctionRegistry.Function function;
+        final Node[] args;
+        DoubleCall(FunctionRegistry.Function function, Node[] args) { this.function = function; this.args = args; }
+        double evalDouble(Frame frame) { return (Double) function.invoke(evalArgs(args, frame)); }
+    }
+
+    static final class BooleanCall extends BooleanNode {
+        final FunctionRegistry.Function function;
+        final Node[] args;
+        BooleanCall(FunctionRegistry.Function function, Node[] args) { this.function = function; this.args = args; }
+        boolean evalBoolean(Frame frame) { return (Boolean) function.invoke(evalArgs(args, frame)); }
+    }
+
+    static final class ObjectCall extends ObjectNode {
+        final FunctionRegistry.Function function;
+        final Node[] args;
+        ObjectCall(FunctionRegistry.Function function, Node[] args) { this.function = function; this.args = args; }
+        Object evalObject(Frame frame) { return function.invoke(evalArgs(args, frame)); }
+    }
+
+    static final class DoubleUnaryCall extends DoubleNode {
+        final DoubleUnaryOperator function;
+        final Node arg;
+        DoubleUnaryCall(DoubleUnaryOperator function, Node arg) { this.function = function; this.arg = arg; }
+        double evalDouble(Frame frame) { return function.applyAsDouble(arg.evalDouble(frame)); }
+    }
+
+    static final class DoubleBinaryCall extends DoubleNode {
+        final DoubleBinaryOperator function;
+        final Node left, right;
+
+        DoubleBinaryCall(DoubleBinaryOperator function, Node left, Node right) {
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        double evalDouble(Frame frame) { return function.applyAsDouble(left.evalDouble(frame), right.evalDouble(frame)); }
+    }
+
+    static final class IntBinaryCall extends IntNode {
+        final IntBinaryOperator function;
+        final Node left, right;
+
+        IntBinaryCall(IntBinaryOperator function, Node left, Node right) {
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        int evalInt(Frame frame) { return function.applyAsInt(left.evalInt(frame), right.evalInt(frame)); }
+    }
+
+    static final class IntsToDoubleCall extends DoubleNode {
+        final FunctionRegistry.IntsToDouble function;
+        final Node left, right;
+
+        IntsToDoubleCall(FunctionRegistry.IntsToDouble function, Node left, Node right) {
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        double evalDouble(Frame frame) { return function.applyAsDouble(left.evalInt(frame), right.evalInt(frame)); }
+    }
+
+    // Calls of functions declared in the program. The arguments are stored straight into the callee's
+    // frame; a function that only returns an expression has it evaluated there without the instruction loop.
+    static Frame enter(Interpreter.Routine routine, Node[] args, Frame frame) {
+        Frame callee = frame.enter(routine.declaration);
+        for (int i = 0; i < args.length; i++) {
+            int slot = routine.parameterSlots[i];
+            switch (routine.parameterTypes[i]) {
+                case INT: callee.ints[slot] = args[i].evalInt(frame); break;
+                case DOUBLE: callee.doubles[slot] = args[i].evalDouble(frame); break;
+                case BOOLEAN: callee.booleans[slot] = args[i].evalBoolean(frame); break;
+                default: callee.objects[slot] = args[i].evalObject(frame);
+            }
+        }
+        return callee;
+    }
+
+    static final class IntUserCall extends IntNode {
+        final Interpreter.Routine routine;
+        final Node[] args;
+        IntUserCall(Interpreter.Routine routine, Node[] args) { this.routine = routine; this.args = args; }
+
+        int evalInt(Frame frame) {
+            Frame callee = enter(routine, args, frame);
+            int result = routine.body != null ? routine.body.evalInt(callee) : Interpreter.run(routine, callee).intResult;
+            frame.exit();
+            return result;
+        }
+    }
+
+    static final class DoubleUserCall extends DoubleNode {
+        final Interpreter.Routine routine;
+        final Node[] args;
+        DoubleUserCall(Interpreter.Routine routine, Node[] args) { this.routine = routine; this.args = args; }
+
+        double evalDouble(Frame frame) {
+            Frame callee = enter(routine, args, frame);
+            double result = routine.body != null ? routine.body.evalDouble(callee)
+                    : Interpreter.run(routine, callee).doubleResult;
+            frame.exit();
+            return result;
+        }
+    }
+
+    static final class BooleanUserCall extends BooleanNode {
+        final Interpreter.Routine routine;
+        final Node[] args;
+        BooleanUserCall(Interpreter.Routine routine, Node[] args) { this.routine = routine; this.args = args; }
+
+        boolean evalBoolean(Frame frame) {
+            Frame callee = enter(routine, args, frame);
+            boolean result = routine.body != null ? routine.body.evalBoolean(callee)
+                    : Interpreter.run(routine, callee).booleanResult;
+            frame.exit();
+            return result;
+        }
+    }
+
+    // Also void functions, which return null
+    static final class ObjectUserCall extends ObjectNode {
+        final Interpreter.Routine routine;
+        final Node[] args;
+        ObjectUserCall(Interpreter.Routine routine, Node[] args) { this.routine = routine; this.args = args; }
+
+        Object evalObject(Frame frame) {
+            Frame callee = enter(routine, args, frame);
+            Object result = routine.body != null ? routine.body.evalObject(callee)
+                    : Interpreter.run(routine, callee).objectResult;
+            frame.exit();
+            return result;
+        }
+    }
+}
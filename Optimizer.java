@@ -0,0 +1,386 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Rewrites a checked program before it is compiled for execution. Constant arithmetic, comparisons and
+// calls to @Pure builtins with constant arguments are folded, except where the result is a string; a
+// variable stored exactly once, by a top-level declaration of a constant, is replaced by that
+// constant; stores of constants that nothing reads are dropped, and so are branches whose condition is
+// constant. Anything that would fail when run, such as 1 / 0, is left alone so the error is still
+// reported at the same point. Function bodies are optimized separately, as their variables are slots
+// in frames of their own.
+//
+// The editor keeps checking and reusing the statements it hands to the compiler, so nodes are never
+// modified: changed parts of the tree are rebuilt with their annotations copied, the rest is shared.
+final class Optimizer {
+    // -Dcompiler.optimize=false runs programs exactly as written
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("compiler.optimize", "true"));
+
+    // Propagating a constant can make more code constant; a few rounds reach everything in practice
+    private static final int MAX_ROUNDS = 4;
+
+    // Keyed by variable(): stores and reads that can happen when the program runs
+    private final Map<Integer, Integer> stores = new HashMap<>();
+    private final Map<Integer, Integer> reads = new HashMap<>();
+    // Values of variables declared from a constant at the top level, converted to the declared type
+    private final Map<Integer, Ast.Literal> declared = new HashMap<>();
+    private final Map<Integer, Ast.Literal> constants = new HashMap<>();
+
+    private Optimizer() {}
+
+    // Returns the program itself when nothing could be improved
+    static Ast.Program optimize(Ast.Program program) {
+        if (!ENABLED) return program;
+        List<Ast.Stmt> statements = optimize(program.statements, true);
+        if (statements == program.statements) return program;
+
+        Ast.Program optimized = new Ast.Program(statements);
+        optimized.intSlots = program.intSlots;
+        optimized.doubleSlots = program.doubleSlots;
+        optimized.booleanSlots = program.booleanSlots;
+        optimized.objectSlots = program.objectSlots;
+        optimized.errors = program.errors;
+        return optimized;
+    }
+
+    // Optimizes the top level, or a function body, which runs any number of times and so has no
+    // constant declarations
+    private static List<Ast.Stmt> optimize(List<Ast.Stmt> statements, boolean topLevel) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            Optimizer pass = new Optimizer();
+            for (Ast.Stmt stmt : statements) {
+                pass.scan(stmt, topLevel);
+            }
+            pass.declared.forEach((variable, value) -> {
+                if (pass.stores.get(variable) == 1) pass.constants.put(variable, value);
+            });
+            List<Ast.Stmt> rewritten = pass.rewrite(statements);
+            if (rewritten == statements) break;
+            statements = rewritten;
+        }
+        return statements;
+    }
+
+    // Slots are numbered per kind of Frame array, so the kind is part of the key
+    private static int variable(Ast.Type type, int slot) {
+        switch (type) {
+            case INT: return slot * 4;
+            case DOUBLE: return slot * 4 + 1;
+            case BOOLEAN: return slot * 4 + 2;
+            default: return slot * 4 + 3;
+        }
+    }
+
+    // Statements with errors never run, so whatever they contain is ignored, as Interpreter does.
+    // Top-level statements run in order exactly once, so nothing after a top-level declaration can
+    // observe the variable before it. Reads before it are possible, as TypeChecker accepts a variable
+    // after any earlier declaration of the name, even one in a branch that never runs.
+    private void scan(Ast.Stmt stmt, boolean topLevel) {
+        if (stmt.error != null) return;
+        if (stmt instanceof Ast.FunctionDecl) {
+            return; // its variables are in another frame
+        } else if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                scan(inner, topLevel);
+            }
+        } else if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            scan(branch.condition);
+            scan(branch.then, false);
+            if (branch.otherwise != null) scan(branch.otherwise, false);
+        } else if (stmt instanceof Ast.While) {
+            Ast.While loop = (Ast.While) stmt;
+            scan(loop.condition);
+            scan(loop.body, false);
+        } else if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            Ast.Type type = TypeChecker.declaredType(decl.type);
+            scan(decl.init);
+            int variable = variable(type, decl.slot);
+            stores.merge(variable, 1, Integer::sum);
+            if (topLevel && decl.init instanceof Ast.Literal && !reads.containsKey(variable)) {
+                declared.put(variable, convert((Ast.Literal) decl.init, type));
+            }
+        } else if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            scan(assign.value);
+            stores.merge(variable(assign.type, assign.slot), 1, Integer::sum);
+        } else if (stmt instanceof Ast.Print) {
+            scan(((Ast.Print) stmt).value);
+        } else if (stmt instanceof Ast.ExprStmt) {
+            scan(((Ast.ExprStmt) stmt).expr);
+        } else if (stmt instanceof Ast.Return && ((Ast.Return) stmt).value != null) {
+            scan(((Ast.Return) stmt).value);
+        }
+    }
+
+    private void scan(Ast.Expr expr) {
+        if (expr instanceof Ast.Variable) {
+            reads.merge(variable(expr.type, ((Ast.Variable) expr).slot), 1, Integer::sum);
+        } else if (expr instanceof Ast.Unary) {
+            scan(((Ast.Unary) expr).operand);
+        } else if (expr instanceof Ast.Binary) {
+            scan(((Ast.Binary) expr).left);
+            scan(((Ast.Binary) expr).right);
+        } else if (expr instanceof Ast.Call) {
+            for (Ast.Expr arg : ((Ast.Call) expr).args) {
+                scan(arg);
+            }
+        }
+    }
+
+    // The value a store of this constant leaves in a variable of the given type
+    private static Ast.Literal convert(Ast.Literal value, Ast.Type type) {
+        if (value.type == type) return value;
+        switch (type) {
+            case INT: return literal(((Number) value.value).intValue(), type);
+            case DOUBLE: return literal(((Number) value.value).doubleValue(), type);
+            default: return literal(value.value, type);
+        }
+    }
+
+    // Returns the list itself when no statement changed
+    private List<Ast.Stmt> rewrite(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> result = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Ast.Stmt stmt : statements) {
+            Ast.Stmt rewritten = rewrite(stmt);
+            if (rewritten != stmt) changed = true;
+            if (rewritten != null) result.add(rewritten);
+        }
+        return changed ? result : statements;
+    }
+
+    // Returns the statement itself when nothing changed, or null when it can go. A rewritten statement
+    // keeps the line of the one it replaces.
+    private Ast.Stmt rewrite(Ast.Stmt stmt) {
+        Ast.Stmt rewritten = rewriteStatement(stmt);
+        if (rewritten != null && rewritten.line == 0) rewritten.line = stmt.line;
+        return rewritten;
+    }
+
+    private Ast.Stmt rewriteStatement(Ast.Stmt stmt) {
+        if (stmt.error != null) return stmt;
+        if (stmt instanceof Ast.FunctionDecl) {
+            Ast.FunctionDecl decl = (Ast.FunctionDecl) stmt;
+            List<Ast.Stmt> body = optimize(decl.body.statements, false);
+            if (body == decl.body.statements) return stmt;
+            Ast.Block block = new Ast.Block(body);
+            block.line = decl.body.line;
+            Ast.FunctionDecl rewritten = new Ast.FunctionDecl(decl.returnType, decl.name, decl.parameters, block);
+            rewritten.intSlots = decl.intSlots;
+            rewritten.doubleSlots = decl.doubleSlots;
+            rewritten.booleanSlots = decl.booleanSlots;
+            rewritten.objectSlots = decl.objectSlots;
+            return rewritten;
+        }
+        if (stmt instanceof Ast.Return) {
+            Ast.Return ret = (Ast.Return) stmt;
+            Ast.Expr value = ret.value != null ? fold(ret.value) : null;
+            if (value == ret.value) return stmt;
+            Ast.Return rewritten = new Ast.Return(value);
+            rewritten.type = ret.type;
+            return rewritten;
+        }
+        if (stmt instanceof Ast.Block) {
+            Ast.Block block = (Ast.Block) stmt;
+            List<Ast.Stmt> statements = rewrite(block.statements);
+            return statements == block.statements ? stmt : new Ast.Block(statements);
+        }
+        if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            Ast.Expr condition = fold(branch.condition);
+            if (condition instanceof Ast.Literal) {
+                Ast.Stmt taken = (Boolean) ((Ast.Literal) condition).value ? branch.then : branch.otherwise;
+                return taken != null ? rewrite(taken) : null;
+            }
+            Ast.Stmt then = orEmpty(rewrite(branch.then));
+            Ast.Stmt otherwise = branch.otherwise != null ? orEmpty(rewrite(branch.otherwise)) : null;
+            if (condition == branch.condition && then == branch.then && otherwise == branch.otherwise) return stmt;
+            return new Ast.If(condition, then, otherwise);
+        }
+        if (stmt instanceof Ast.While) {
+            Ast.While loop = (Ast.While) stmt;
+            Ast.Expr condition = fold(loop.condition);
+            if (condition instanceof Ast.Literal && !(Boolean) ((Ast.Literal) condition).value) return null;
+            Ast.Stmt body = orEmpty(rewrite(loop.body));
+            if (condition == loop.condition && body == loop.body) return stmt;
+            return new Ast.While(condition, body);
+        }
+        if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            Ast.Expr init = fold(decl.init);
+            if (init instanceof Ast.Literal && isDead(variable(TypeChecker.declaredType(decl.type), decl.slot))) {
+                return null;
+            }
+            if (init == decl.init) return stmt;
+            Ast.VarDecl rewritten = new Ast.VarDecl(decl.type, decl.name, init);
+            rewritten.slot = decl.slot;
+            return rewritten;
+        }
+        if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            Ast.Expr value = fold(assign.value);
+            if (value instanceof Ast.Literal && isDead(variable(assign.type, assign.slot))) return null;
+            if (value == assign.value) return stmt;
+            Ast.Assign rewritten = new Ast.Assign(assign.name, value, assign.compound);
+            rewritten.type = assign.type;
+            rewritten.slot = assign.slot;
+            return rewritten;
+        }
+        if (stmt instanceof Ast.Print) {
+            Ast.Expr value = fold(((Ast.Print) stmt).value);
+            return value == ((Ast.Print) stmt).value ? stmt : new Ast.Print(value);
+        }
+        if (stmt instanceof Ast.ExprStmt) {
+            Ast.Expr expr = fold(((Ast.ExprStmt) stmt).expr);
+            return expr == ((Ast.ExprStmt) stmt).expr ? stmt : new Ast.ExprStmt(expr);
+        }
+        return stmt;
+    }
+
+    // A store is dead when every read of the variable has been replaced by its constant, or there is none
+    private boolean isDead(int variable) {
+        return constants.containsKey(variable) || !reads.containsKey(variable);
+    }
+
+    private static Ast.Stmt orEmpty(Ast.Stmt stmt) {
+        return stmt != null ? stmt : new Ast.Block(List.of());
+    }
+
+    // Returns the expression itself when nothing changed
+    private Ast.Expr fold(Ast.Expr expr) {
+        if (expr instanceof Ast.Variable) {
+            Ast.Literal value = constants.get(variable(expr.type, ((Ast.Variable) expr).slot));
+            return value != null ? value : expr;
+        }
+        if (expr instanceof Ast.Unary) {
+            Ast.Unary unary = (Ast.Unary) expr;
+            Ast.Expr operand = fold(unary.operand);
+            if (operand instanceof Ast.Literal) {
+                Object value = ((Ast.Literal) operand).value;
+                if (unary.op.equals("!")) return literal(!(Boolean) value, expr.type);
+                if (expr.type == Ast.Type.INT) return literal(-(Integer) value, expr.type);
+                return literal(-((Number) value).doubleValue(), expr.type);
+            }
+            return operand == unary.operand ? expr : typed(new Ast.Unary(unary.op, operand), expr.type);
+        }
+        if (expr instanceof Ast.Binary) {
+            return foldBinary((Ast.Binary) expr);
+        }
+        if (expr instanceof Ast.Call) {
+            return foldCall((Ast.Call) expr);
+        }
+        return expr;
+    }
+
+    private Ast.Expr foldBinary(Ast.Binary binary) {
+        Ast.Expr left = fold(binary.left);
+        // The right side of && and || only runs when the left side does not decide the result
+        if (left instanceof Ast.Literal && (binary.op.equals("&&") || binary.op.equals("||"))) {
+            boolean decides = (Boolean) ((Ast.Literal) left).value == binary.op.equals("||");
+            return decides ? left : fold(binary.right);
+        }
+        Ast.Expr right = fold(binary.right);
+        if (left instanceof Ast.Literal && right instanceof Ast.Literal) {
+            Object value = evaluate(binary, ((Ast.Literal) left).value, ((Ast.Literal) right).value);
+            if (value != null) return literal(value, binary.type);
+        }
+        if (left == binary.left && right == binary.right) return binary;
+        return typed(new Ast.Binary(binary.op, left, right), binary.type);
+    }
+
+    // The value the operator produces at run time, or null if it would fail or cannot be known now
+    private static Object evaluate(Ast.Binary binary, Object a, Object b) {
+        switch (binary.op) {
+            case "==": case "!=": case "<": case ">": case "<=": case ">=":
+                switch (TypeChecker.comparisonType(binary.left.type, binary.right.type)) {
+                    case INT: case DOUBLE:
+                        return compare(Node.comparison(binary.op), ((Number) a).doubleValue(), ((Number) b).doubleValue());
+                    case BOOLEAN:
+                        return a.equals(b) == binary.op.equals("==");
+                    default:
+                        return null; // strings compare by reference
+                }
+            default:
+                break;
+        }
+        if (binary.type == Ast.Type.STRING) {
+            return null; // a new string every time, where a literal would be the same object to ==
+        }
+        char op = binary.op.charAt(0);
+        if (binary.type == Ast.Type.INT) {
+            int x = (Integer) a, y = (Integer) b;
+            switch (op) {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                case '%': return y != 0 ? x % y : null;
+                default: return y != 0 ? x / y : null;
+            }
+        }
+        double x = ((Number) a).doubleValue(), y = ((Number) b).doubleValue();
+        switch (op) {
+            case '+': return x + y;
+            case '-': return x - y;
+            case '*': return x * y;
+            case '%': return x % y;
+            default: return x / y;
+        }
+    }
+
+    // Ints convert to double exactly, so one comparison covers both; NaN compares false as in Java
+    private static boolean compare(int comparison, double a, double b) {
+        switch (comparison) {
+            case Node.EQ: return a == b;
+            case Node.NE: return a != b;
+            case Node.LT: return a < b;
+            case Node.GE: return a >= b;
+            case Node.GT: return a > b;
+            default: return a <= b;
+        }
+    }
+
+    private Ast.Expr foldCall(Ast.Call call) {
+        List<Ast.Expr> args = new ArrayList<>(call.args.size());
+        boolean changed = false, constant = true;
+        for (Ast.Expr arg : call.args) {
+            Ast.Expr folded = fold(arg);
+            changed |= folded != arg;
+            constant &= folded instanceof Ast.Literal;
+            args.add(folded);
+        }
+        if (constant && call.function != null && call.function.pure && isFoldable(call.type)) {
+            Object[] values = new Object[args.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ((Ast.Literal) args.get(i)).value;
+            }
+            try {
+                Object result = call.function.invoke(values);
+                if (result != null) return literal(result, call.type);
+            } catch (RuntimeException e) {
+                // Left to fail when the program runs, where the error is reported
+            }
+        }
+        if (!changed) return call;
+        Ast.Call rewritten = new Ast.Call(call.name, args);
+        rewritten.function = call.function;
+        return typed(rewritten, call.type);
+    }
+
+    // Types both backends can load as a constant. Strings are left out: a builtin returns a new string,
+    // while a literal is interned and so would compare == to every equal literal.
+    private static boolean isFoldable(Ast.Type type) {
+        return type == Ast.Type.INT || type == Ast.Type.DOUBLE || type == Ast.Type.BOOLEAN;
+    }
+
+    private static Ast.Literal literal(Object value, Ast.Type type) {
+        return typed(new Ast.Literal(value), type);
+    }
+
+    private static <T extends Ast.Expr> T typed(T expr, Ast.Type type) {
+        expr.type = type;
+        return expr;
+    }
+}
@@ -0,0 +1,466 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Recursive descent parser that turns the LexicalAnalyzer token stream into an Ast.Program
+class Parser {
+    // Operators the lexer may glue together (e.g. "=-"); anything else is split into single characters
+    private static final String[] COMPOUND_OPERATORS = {
+        "==", "!=", "<=", ">=", "&&", "||", "+=", "-=", "*=", "/=", "%=", "++", "--"
+    };
+
+    static class ParseException extends RuntimeException {
+        ParseException(String message) {
+            super(message);
+        }
+    }
+
+    // Tokens are pulled lazily; only the statement being parsed is kept in the window
+    private final Iterator<LexicalAnalyzer.Token> source;
+    private final List<LexicalAnalyzer.Token> tokens = new ArrayList<>();
+    private int pos;
+
+    Parser(Iterator<LexicalAnalyzer.Token> source) {
+        this.source = source;
+    }
+
+    Parser(List<LexicalAnalyzer.Token> tokens) {
+        this(tokens.iterator());
+    }
+
+    Ast.Program parseProgram() {
+        List<Ast.Stmt> statements = new ArrayList<>();
+        Ast.Stmt stmt;
+        while ((stmt = parseNext()) != null) {
+            statements.add(stmt);
+        }
+        return new Ast.Program(statements);
+    }
+
+    // The next top-level statement, or null at the end of the input
+    Ast.Stmt parseNext() {
+        if (atEnd()) {
+            return null;
+        }
+        tokens.subList(0, pos).clear();
+        pos = 0;
+        return parseRecovering();
+    }
+
+    // Source span of the statement last returned by parseNext()
+    LexicalAnalyzer.Token firstToken() {
+        return tokens.get(0);
+    }
+
+    long endOffset() {
+        LexicalAnalyzer.Token last = tokens.get(pos - 1);
+        return last.offset + last.length();
+    }
+
+    private Ast.Stmt parseRecovering() {
+        int start = pos;
+        try {
+            return parseStatement();
+        } catch (ParseException e) {
+            // Skip to the end of the broken statement, taking any braced block in it along, and keep going
+            pos = start;
+            int depth = 0;
+            while (!atEnd()) {
+                if (check("{")) {
+                    depth++;
+                } else if (check("}")) {
+                    if (depth == 0) break;
+                    if (--depth == 0) {
+                        pos++;
+                        break;
+                    }
+                } else if (check(";") && depth == 0) {
+                    pos++;
+                    break;
+                }
+                pos++;
+            }
+            if (pos == start) pos++;
+            Ast.Stmt invalid = new Ast.Invalid("Syntax Error: Unsupported statement → " + render(start, pos));
+            invalid.line = tokens.get(start).line;
+            return invalid;
+        }
+    }
+
+    private Ast.Stmt parseStatement() {
+        LexicalAnalyzer.Token token = peek();
+        Ast.Stmt stmt = parseStatement(token);
+        stmt.line = token.line;
+        return stmt;
+    }
+
+    private Ast.Stmt parseStatement(LexicalAnalyzer.Token token) {
+        // Blocks and control flow
+        if (match("{")) {
+            List<Ast.Stmt> statements = new ArrayList<>();
+            while (!check("}")) {
+                if (atEnd()) {
+                    throw new ParseException("'}' expected");
+                }
+                statements.add(parseRecovering());
+            }
+            pos++;
+            return new Ast.Block(statements);
+        }
+        if (token.type == LexicalAnalyzer.TokenType.KEYWORD && token.value.equals("if")) {
+            pos++;
+            Ast.Expr condition = parseCondition();
+            Ast.Stmt then = parseStatement();
+            Ast.Stmt otherwise = match("else") ? parseStatement() : null;
+            return new Ast.If(condition, then, otherwise);
+        }
+        if (token.type == LexicalAnalyzer.TokenType.KEYWORD && token.value.equals("while")) {
+            pos++;
+            Ast.Expr condition = parseCondition();
+            return new Ast.While(condition, parseStatement());
+        }
+
+        if (token.type == LexicalAnalyzer.TokenType.KEYWORD && token.value.equals("return")) {
+            pos++;
+            Ast.Expr value = check(";") ? null : parseExpression();
+            expect(";");
+            return new Ast.Return(value);
+        }
+
+        // Declarations
+        if (isTypeKeyword(token) || token.type == LexicalAnalyzer.TokenType.KEYWORD && token.value.equals("void")) {
+            String type = parseType();
+            // A function may take the name of a builtin, which the lexer marks as a function keyword
+            if (!atEnd() && (peek().type == LexicalAnalyzer.TokenType.IDENTIFIER
+                    || peek().type == LexicalAnalyzer.TokenType.FUNCTION) && checkAt(1, "(")) {
+                return parseFunction(type);
+            }
+            if (type.equals("void")) {
+                throw new ParseException("'(' expected");
+            }
+            String name = expectIdentifier();
+            expect("=");
+            Ast.Expr init = parseExpression();
+            expect(";");
+            return new Ast.VarDecl(type, name, init);
+        }
+
+        // print(...) and System.out.println(...)
+        if (matchPrint()) {
+            expect("(");
+            Ast.Expr value = parseExpression();
+            expect(")");
+            expect(";");
+            return new Ast.Print(value);
+        }
+
+        // Assignments
+        if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER && checkAt(1, "=")) {
+            pos += 2;
+            Ast.Expr value = parseExpression();
+            expect(";");
+            return new Ast.Assign(token.value, value);
+        }
+
+        // Compound assignments and increments are rewritten into plain assignments
+        if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER && available(pos + 1)) {
+            String op = tokens.get(pos + 1).value;
+            Ast.Expr value = null;
+            if (op.equals("+=") || op.equals("-=") || op.equals("*=") || op.equals("/=") || op.equals("%=")) {
+                pos += 2;
+                value = parseExpression();
+            } else if (op.equals("++") || op.equals("--")) {
+                pos += 2;
+                value = new Ast.Literal(1);
+            }
+            if (value != null) {
+                expect(";");
+                return new Ast.Assign(token.value,
+                        new Ast.Binary(op.substring(0, 1), new Ast.Variable(token.value), value), true);
+            }
+        }
+
+        // Function calls
+        Ast.Expr expr = parseExpression();
+        if (!(expr instanceof Ast.Call)) {
+            throw new ParseException("Not a statement");
+        }
+        expect(";");
+        return new Ast.ExprStmt(expr);
+    }
+
+    private Ast.Stmt parseFunction(String returnType) {
+        String name = advance().value;
+        expect("(");
+        List<Ast.Parameter> parameters = new ArrayList<>();
+        if (!check(")")) {
+            do {
+                if (!isTypeKeyword(peek())) {
+                    throw new ParseException("Parameter type expected");
+                }
+                String type = parseType();
+                parameters.add(new Ast.Parameter(type, expectIdentifier()));
+            } while (match(","));
+        }
+        expect(")");
+        if (!check("{")) {
+            throw new ParseException("'{' expected");
+        }
+        return new Ast.FunctionDecl(returnType, name, parameters, (Ast.Block) parseStatement());
+    }
+
+    // A type keyword, or void, and any [] after it
+    private String parseType() {
+        String type = advance().value;
+        if (match("[")) {
+            expect("]");
+            type += "[]";
+        }
+        return type;
+    }
+
+    private Ast.Expr parseCondition() {
+        expect("(");
+        Ast.Expr condition = parseExpression();
+        expect(")");
+        return condition;
+    }
+
+    private Ast.Expr parseExpression() {
+        return parseOr();
+    }
+
+    private Ast.Expr parseOr() {
+        Ast.Expr left = parseAnd();
+        while (check("||")) {
+            String op = advance().value;
+            left = new Ast.Binary(op, left, parseAnd());
+        }
+        return left;
+    }
+
+    private Ast.Expr parseAnd() {
+        Ast.Expr left = parseEquality();
+        while (check("&&")) {
+            String op = advance().value;
+            left = new Ast.Binary(op, left, parseEquality());
+        }
+        return left;
+    }
+
+    private Ast.Expr parseEquality() {
+        Ast.Expr left = parseRelational();
+        while (check("==") || check("!=")) {
+            String op = advance().value;
+            left = new Ast.Binary(op, left, parseRelational());
+        }
+        return left;
+    }
+
+    private Ast.Expr parseRelational() {
+        Ast.Expr left = parseAdditive();
+        while (check("<") || check(">") || check("<=") || check(">=")) {
+            String op = advance().value;
+            left = new Ast.Binary(op, left, parseAdditive());
+        }
+        return left;
+    }
+
+    private Ast.Expr parseAdditive() {
+        Ast.Expr left = parseMultiplicative();
+        while (check("+") || check("-")) {
+            String op = advance().value;
+            left = new Ast.Binary(op, left, parseMultiplicative());
+        }
+        return left;
+    }
+
+    private Ast.Expr parseMultiplicative() {
+        Ast.Expr left = parseUnary();
+        while (check("*") || check("/") || check("%")) {
+            String op = advance().value;
+            left = new Ast.Binary(op, left, parseUnary());
+        }
+        return left;
+    }
+
+    private Ast.Expr parseUnary() {
+        if (check("-")) {
+            pos++;
+            Ast.Expr operand = parseUnary();
+            // Fold negative number literals straight away
+            if (operand instanceof Ast.Literal) {
+                Object value = ((Ast.Literal) operand).value;
+                if (value instanceof Integer) return new Ast.Literal(-(Integer) value);
+                if (value instanceof Double) return new Ast.Literal(-(Double) value);
+            }
+            return new Ast.Unary("-", operand);
+        }
+        if (match("!")) {
+            return new Ast.Unary("!", parseUnary());
+        }
+        return parsePrimary();
+    }
+
+    private Ast.Expr parsePrimary() {
+        if (atEnd()) {
+            throw new ParseException("Unexpected end of input");
+        }
+        LexicalAnalyzer.Token token = advance();
+
+        if (token.type == LexicalAnalyzer.TokenType.LITERAL) {
+            return new Ast.Literal(parseLiteral(token.value));
+        }
+        boolean named = token.type == LexicalAnalyzer.TokenType.FUNCTION
+                || token.type == LexicalAnalyzer.TokenType.IDENTIFIER;
+        if (named && check("(")) {
+            pos++;
+            List<Ast.Expr> args = new ArrayList<>();
+            if (!check(")")) {
+                do {
+                    args.add(parseExpression());
+                } while (match(","));
+            }
+            expect(")");
+            return new Ast.Call(token.value, args);
+        }
+        if (token.type == LexicalAnalyzer.TokenType.IDENTIFIER) {
+            return new Ast.Variable(token.value);
+        }
+        if (token.value.equals("(")) {
+            Ast.Expr expr = parseExpression();
+            expect(")");
+            return expr;
+        }
+        throw new ParseException("Unexpected token " + token.value);
+    }
+
+    private static Object parseLiteral(String text) {
+        if (text.startsWith("\"")) {
+            // Interned as Java does, so equal literals are one object to == on both backends
+            return text.substring(1, text.length() - 1).intern();
+        }
+        if (text.equals("true") || text.equals("false")) {
+            return Boolean.parseBoolean(text);
+        }
+        try {
+            return text.contains(".") ? (Object) Double.parseDouble(text) : (Object) Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Number out of range: " + text);
+        }
+    }
+
+    private boolean matchPrint() {
+        if (check("print") && checkAt(1, "(")) {
+            pos++;
+            return true;
+        }
+        if (check("System") && checkAt(1, ".") && checkAt(2, "out") && checkAt(3, ".") && checkAt(4, "println")) {
+            pos += 5;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isTypeKeyword(LexicalAnalyzer.Token token) {
+        if (token.type != LexicalAnalyzer.TokenType.KEYWORD) return false;
+        switch (token.value) {
+            case "int": case "double": case "boolean": case "String":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String expectIdentifier() {
+        if (atEnd() || peek().type != LexicalAnalyzer.TokenType.IDENTIFIER) {
+            throw new ParseException("Identifier expected");
+        }
+        return advance().value;
+    }
+
+    private void expect(String value) {
+        if (!match(value)) {
+            throw new ParseException("'" + value + "' expected");
+        }
+    }
+
+    private boolean match(String value) {
+        if (check(value)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean check(String value) {
+        return checkAt(0, value);
+    }
+
+    private boolean checkAt(int offset, String value) {
+        int index = pos + offset;
+        return available(index) && tokens.get(index).value.equals(value);
+    }
+
+    private LexicalAnalyzer.Token peek() {
+        if (!available(pos)) {
+            throw new ParseException("Unexpected end of input");
+        }
+        return tokens.get(pos);
+    }
+
+    private LexicalAnalyzer.Token advance() {
+        available(pos);
+        return tokens.get(pos++);
+    }
+
+    private boolean atEnd() {
+        return !available(pos);
+    }
+
+    // Pulls tokens from the source until the window reaches index
+    private boolean available(int index) {
+        while (tokens.size() <= index && source.hasNext()) {
+            addSplit(source.next());
+        }
+        return index < tokens.size();
+    }
+
+    // Rebuilds readable source text for error messages
+    private String render(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            String value = tokens.get(i).value;
+            if (text.length() > 0 && isWordChar(text.charAt(text.length() - 1)) && isWordChar(value.charAt(0))) {
+                text.append(' ');
+            }
+            text.append(value);
+        }
+        return text.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '"';
+    }
+
+    private void addSplit(LexicalAnalyzer.Token token) {
+        if (token.type != LexicalAnalyzer.TokenType.OPERATOR || token.value.length() == 1) {
+            tokens.add(token);
+            return;
+        }
+        String text = token.value;
+        int i = 0;
+        while (i < text.length()) {
+            String op = text.substring(i, i + 1);
+            for (String compound : COMPOUND_OPERATORS) {
+                if (text.startsWith(compound, i)) {
+                    op = compound;
+                    break;
+                }
+            }
+            tokens.add(new LexicalAnalyzer.Token(LexicalAnalyzer.TokenType.OPERATOR, op,
+                    token.line, token.column + i, token.offset + i));
+            i += op.length();
+        }
+    }
+}
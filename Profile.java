@@ -0,0 +1,231 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// Where one compile and run of a program spent its time: each compiler phase, the statements of each
+// source line and each builtin, with how often they ran, for how long, and how many bytes the running
+// thread allocated meanwhile. JavaSubsetCompiler fills a profile in when it is given one; programs
+// compiled without one carry no instrumentation at all. Phases and slow builtin calls are also sent
+// to JFR, so a flight recording of a profiled run shows them next to the JVM's own events.
+// Filled in by one thread at a time and read once the run is over.
+final class Profile {
+    enum Phase {
+        CACHE("Cache lookup"), LEX("Lexing"), PARSE("Parsing"), CHECK("Type checking"), OPTIMIZE("Optimizing"),
+        PREPARE("Preparing"), INSTRUMENT("Instrumenting"), RUN("Running");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    // Totals for one phase, line or builtin. Time spent in statements and builtins includes the builtins
+    // they call; a while or if line counts its condition tests, not its body.
+    static final class Counter {
+        final String name;
+        long count, nanos, bytes;
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        // Counts one call that started at these readings
+        void add(long startNanos, long startBytes) {
+            count++;
+            nanos += System.nanoTime() - startNanos;
+            bytes += allocatedBytes() - startBytes;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final Map<Phase, Counter> phases = new EnumMap<>(Phase.class);
+    private final Map<Integer, Counter> lines = new TreeMap<>();
+    private final Map<String, Counter> builtins = new TreeMap<>();
+    private final Map<FunctionRegistry.Function, FunctionRegistry.Function> timed = new IdentityHashMap<>();
+
+    Profile() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Counter(phase.label));
+        }
+    }
+
+    // Bytes allocated by the current thread so far, or 0 where the JVM does not count them
+    static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    // Measures a phase until the span is closed. Null without a profile, which try-with-resources skips.
+    static Span start(Profile profile, Phase phase) {
+        return profile != null ? profile.new Span(profile.phases.get(phase)) : null;
+    }
+
+    final class Span implements AutoCloseable {
+        private final Counter counter;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long nanos, bytes;
+        private final long lexNanos, lexBytes; // lexing is pulled in by the parser but reported apart
+
+        private Span(Counter counter) {
+            this.counter = counter;
+            Counter lexing = phases.get(Phase.LEX);
+            lexNanos = lexing.nanos;
+            lexBytes = lexing.bytes;
+            event.begin();
+            nanos = System.nanoTime();
+            bytes = allocatedBytes();
+        }
+
+        @Override
+        public void close() {
+            counter.add(nanos, bytes);
+            Counter lexing = phases.get(Phase.LEX);
+            counter.nanos -= lexing.nanos - lexNanos;
+            counter.bytes -= lexing.bytes - lexBytes;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = counter.name;
+                event.commit();
+            }
+        }
+    }
+
+    // Tokens read through the returned iterator are timed as lexing
+    Iterator<LexicalAnalyzer.Token> lexing(Iterator<LexicalAnalyzer.Token> tokens) {
+        Counter counter = phases.get(Phase.LEX);
+        return new Iterator<LexicalAnalyzer.Token>() {
+            @Override
+            public boolean hasNext() {
+                long nanos = System.nanoTime(), bytes = allocatedBytes();
+                boolean more = tokens.hasNext();
+                counter.nanos += System.nanoTime() - nanos;
+                counter.bytes += allocatedBytes() - bytes;
+                return more;
+            }
+
+            @Override
+            public LexicalAnalyzer.Token next() {
+                long nanos = System.nanoTime(), bytes = allocatedBytes();
+                LexicalAnalyzer.Token token = tokens.next();
+                counter.add(nanos, bytes);
+                return token;
+            }
+        };
+    }
+
+    // Counter for the statements starting on a line
+    Counter line(int line) {
+        return lines.computeIfAbsent(line, number -> new Counter("Line " + number));
+    }
+
+    // The builtin with its calls timed; overloads share one counter
+    FunctionRegistry.Function timed(FunctionRegistry.Function function) {
+        return timed.computeIfAbsent(function, original -> new TimedFunction(original,
+                builtins.computeIfAbsent(original.method.getName(), Counter::new)));
+    }
+
+    // Phases that ran, in pipeline order
+    List<Counter> phases() {
+        List<Counter> ran = new ArrayList<>();
+        for (Counter counter : phases.values()) {
+            if (counter.count > 0) ran.add(counter);
+        }
+        return ran;
+    }
+
+    // By line
+    List<Counter> lines() {
+        return new ArrayList<>(lines.values());
+    }
+
+    // By name
+    List<Counter> builtins() {
+        return new ArrayList<>(builtins.values());
+    }
+
+    // A plain text table for terminals
+    String report() {
+        StringBuilder report = new StringBuilder();
+        table(report, "Phase", phases());
+        table(report, "Statement", lines());
+        table(report, "Builtin", builtins());
+        return report.toString();
+    }
+
+    private static void table(StringBuilder report, String title, List<Counter> counters) {
+        if (counters.isEmpty()) return;
+        report.append(String.format("%-20s %12s %12s %14s%n", title, "Count", "Time (ms)", "Allocated (KB)"));
+        for (Counter counter : counters) {
+            report.append(String.format("%-20s %,12d %,12.3f %,14d%n", counter.name, counter.count,
+                    counter.nanos / 1e6, counter.bytes / 1024));
+        }
+    }
+
+    private static final class TimedFunction extends FunctionRegistry.Function {
+        private final Counter counter;
+
+        TimedFunction(FunctionRegistry.Function function, Counter counter) {
+            super(function);
+            this.counter = counter;
+        }
+
+        @Override
+        Object invoke(Object[] args) {
+            BuiltinEvent event = new BuiltinEvent();
+            event.begin();
+            long nanos = System.nanoTime(), bytes = allocatedBytes();
+            try {
+                return super.invoke(args);
+            } finally {
+                counter.add(nanos, bytes);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.builtin = counter.name;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    @Name("javasubset.Phase")
+    @Label("Compiler Phase")
+    @Category("Java Subset Compiler")
+    @Description("A phase of a profiled compile or run; parsing includes the lexing it pulls in")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("javasubset.BuiltinCall")
+    @Label("Slow Builtin Call")
+    @Category("Java Subset Compiler")
+    @Description("A builtin call in a profiled run that took longer than the threshold")
+    @Threshold("1 ms")
+    static final class BuiltinEvent extends Event {
+        @Label("Builtin")
+        String builtin;
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compiled programs keyed by a hash of their source, so a script compiled before skips lexing, parsing,
+// checking and optimizing. Keeps a bounded number of programs in memory, dropping the least recently
+// used, and can also write every program it is given to a directory where later processes find it.
+// Cached programs are shared by everyone who asks for the same source, which is safe because a compiled
+// program is never modified. Thread-safe.
+final class ProgramCache {
+    // Part of every key, so programs written by a compiler that builds different trees are never read
+    private static final String FORMAT = "6 optimize=" + Optimizer.ENABLED
+            + " builtins=" + FunctionRegistry.LIBRARIES + "\n";
+    private static final String SUFFIX = ".program";
+
+    static final class Stats {
+        final long hits, diskHits, misses, evictions;
+        final int size;
+
+        private Stats(long hits, long diskHits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return hits + " hits, " + diskHits + " from disk, " + misses + " misses, " + evictions
+                    + " evicted, " + size + " in memory";
+        }
+    }
+
+    private final int capacity;
+    private final Path directory; // null to keep programs in memory only
+    private final Map<String, Ast.Program> programs;
+    private long hits, diskHits, misses, evictions;
+
+    ProgramCache(int capacity) {
+        this(capacity, null);
+    }
+
+    ProgramCache(int capacity, Path directory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.directory = directory;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ast.Program> eldest) {
+                if (size() <= ProgramCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    static String key(CharSequence source) {
+        MessageDigest digest = digest();
+        digest.update(source.toString().getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest());
+    }
+
+    // Hashes the file in chunks without holding it in memory
+    static String key(Path file) throws IOException {
+        MessageDigest digest = digest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    // The program compiled from the source with this key, or null if it has to be compiled
+    Ast.Program get(String key) {
+        synchronized (this) {
+            Ast.Program program = programs.get(key);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+        }
+        Ast.Program program = directory != null ? load(key) : null;
+        synchronized (this) {
+            if (program != null) {
+                diskHits++;
+                programs.put(key, program);
+            } else {
+                misses++;
+            }
+        }
+        return program;
+    }
+
+    // Takes a checked program, as returned by JavaSubsetCompiler
+    void put(String key, Ast.Program program) {
+        synchronized (this) {
+            programs.put(key, program);
+        }
+        if (directory != null) {
+            store(key, program);
+        }
+    }
+
+    synchronized Stats stats() {
+        return new Stats(hits, diskHits, misses, evictions, programs.size());
+    }
+
+    // The disk store is only an accelerator: anything that cannot be written or read back is compiled
+    // again instead, and entries that turn out to be stale or damaged are removed
+    private void store(String key, Ast.Program program) {
+        Path target = directory.resolve(key + SUFFIX);
+        if (Files.exists(target)) return;
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                ProgramFormat.write(program, out);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temporary = null;
+        } catch (IOException | StackOverflowError e) {
+            // Unwritable directory, or a tree nested too deeply to write on this thread
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    // Left for the next run to overwrite
+                }
+            }
+        }
+    }
+
+    private Ast.Program load(String key) {
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            Ast.Program program = ProgramFormat.read(in, Files.size(file));
+            Interpreter.prepare(program);
+            return program;
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Read again and rejected again next time
+            }
+            return null;
+        }
+    }
+
+    private static MessageDigest digest() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return text.toString();
+    }
+}
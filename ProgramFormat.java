@@ -0,0 +1,431 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary form of a checked Ast.Program, used by ProgramCache to keep programs on disk. Every node is a
+// tag followed by its fields, with the types and slots TypeChecker assigned; names are written once
+// and referred to by number afterwards, as are literal strings that are the same object, so == on
+// strings gives the same answers after loading as before. A statement with an error is stored as just its message, as
+// that is all that is used of it. Builtins are resolved again while reading, since method handles only
+// exist in the JVM that made them; calls to the program's own functions are stored by name.
+final class ProgramFormat {
+    private static final int MAGIC = 0x4A535033; // "JSP3"
+
+    private static final byte BLOCK = 1, IF = 2, WHILE = 3, VAR_DECL = 4, ASSIGN = 5, PRINT = 6, EXPR_STMT = 7,
+            INVALID = 8, FAILED = 9, FUNCTION = 10, RETURN = 11;
+    private static final byte LITERAL = 1, VARIABLE = 2, UNARY = 3, BINARY = 4, CALL = 5, USER_CALL = 6;
+    private static final Ast.Type[] TYPES = Ast.Type.values();
+
+    private ProgramFormat() {}
+
+    static void write(Ast.Program program, DataOutputStream out) throws IOException {
+        new Writer(out).program(program);
+    }
+
+    // Reads a program stored in length bytes. Throws IOException if the data is damaged or calls a
+    // builtin this JVM does not have.
+    static Ast.Program read(DataInputStream in, long length) throws IOException {
+        return new Reader(in, length).program();
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<String, Integer> strings = new IdentityHashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void program(Ast.Program program) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(program.intSlots);
+            out.writeInt(program.doubleSlots);
+            out.writeInt(program.booleanSlots);
+            out.writeInt(program.objectSlots);
+            out.writeInt(program.errors);
+            statements(program.statements);
+        }
+
+        private void statements(List<Ast.Stmt> statements) throws IOException {
+            out.writeInt(statements.size());
+            for (Ast.Stmt stmt : statements) {
+                statement(stmt);
+            }
+        }
+
+        private void statement(Ast.Stmt stmt) throws IOException {
+            if (stmt.error != null) {
+                begin(FAILED, stmt);
+                text(stmt.error);
+            } else if (stmt instanceof Ast.Block) {
+                begin(BLOCK, stmt);
+                statements(((Ast.Block) stmt).statements);
+            } else if (stmt instanceof Ast.If) {
+                Ast.If branch = (Ast.If) stmt;
+                begin(IF, stmt);
+                expression(branch.condition);
+                statement(branch.then);
+                out.writeBoolean(branch.otherwise != null);
+                if (branch.otherwise != null) statement(branch.otherwise);
+            } else if (stmt instanceof Ast.While) {
+                begin(WHILE, stmt);
+                expression(((Ast.While) stmt).condition);
+                statement(((Ast.While) stmt).body);
+            } else if (stmt instanceof Ast.VarDecl) {
+                Ast.VarDecl decl = (Ast.VarDecl) stmt;
+                begin(VAR_DECL, stmt);
+                name(decl.type);
+                name(decl.name);
+                out.writeInt(decl.slot);
+                expression(decl.init);
+            } else if (stmt instanceof Ast.Assign) {
+                Ast.Assign assign = (Ast.Assign) stmt;
+                begin(ASSIGN, stmt);
+                name(assign.name);
+                out.writeByte(assign.type.ordinal());
+                out.writeInt(assign.slot);
+                expression(assign.value);
+            } else if (stmt instanceof Ast.Print) {
+                begin(PRINT, stmt);
+                expression(((Ast.Print) stmt).value);
+            } else if (stmt instanceof Ast.ExprStmt) {
+                begin(EXPR_STMT, stmt);
+                expression(((Ast.ExprStmt) stmt).expr);
+            } else if (stmt instanceof Ast.FunctionDecl) {
+                Ast.FunctionDecl decl = (Ast.FunctionDecl) stmt;
+                begin(FUNCTION, stmt);
+                name(decl.returnType);
+                name(decl.name);
+                out.writeInt(decl.parameters.size());
+                for (Ast.Parameter parameter : decl.parameters) {
+                    name(parameter.type);
+                    name(parameter.name);
+                    out.writeInt(parameter.slot);
+                }
+                out.writeInt(decl.intSlots);
+                out.writeInt(decl.doubleSlots);
+                out.writeInt(decl.booleanSlots);
+                out.writeInt(decl.objectSlots);
+                statement(decl.body);
+            } else if (stmt instanceof Ast.Return) {
+                Ast.Return ret = (Ast.Return) stmt;
+                begin(RETURN, stmt);
+                out.writeByte(ret.type.ordinal());
+                out.writeBoolean(ret.value != null);
+                if (ret.value != null) expression(ret.value);
+            } else {
+                begin(INVALID, stmt);
+                text(((Ast.Invalid) stmt).message);
+            }
+        }
+
+        // Every statement starts with its tag and line
+        private void begin(byte tag, Ast.Stmt stmt) throws IOException {
+            out.writeByte(tag);
+            out.writeInt(stmt.line);
+        }
+
+        private void expression(Ast.Expr expr) throws IOException {
+            if (expr instanceof Ast.Literal) {
+                out.writeByte(LITERAL);
+                out.writeByte(expr.type.ordinal());
+                Object value = ((Ast.Literal) expr).value;
+                switch (expr.type) {
+                    case INT: out.writeInt((Integer) value); break;
+                    case DOUBLE: out.writeDouble((Double) value); break;
+                    case BOOLEAN: out.writeBoolean((Boolean) value); break;
+                    default: string((String) value);
+                }
+            } else if (expr instanceof Ast.Variable) {
+                out.writeByte(VARIABLE);
+                out.writeByte(expr.type.ordinal());
+                name(((Ast.Variable) expr).name);
+                out.writeInt(((Ast.Variable) expr).slot);
+            } else if (expr instanceof Ast.Unary) {
+                out.writeByte(UNARY);
+                out.writeByte(expr.type.ordinal());
+                name(((Ast.Unary) expr).op);
+                expression(((Ast.Unary) expr).operand);
+            } else if (expr instanceof Ast.Binary) {
+                Ast.Binary binary = (Ast.Binary) expr;
+                out.writeByte(BINARY);
+                out.writeByte(expr.type.ordinal());
+                name(binary.op);
+                expression(binary.left);
+                expression(binary.right);
+            } else {
+                Ast.Call call = (Ast.Call) expr;
+                out.writeByte(call.function != null ? CALL : USER_CALL);
+                out.writeByte(expr.type.ordinal());
+                name(call.name);
+                out.writeInt(call.args.size());
+                for (Ast.Expr arg : call.args) {
+                    expression(arg);
+                }
+            }
+        }
+
+        private void name(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                out.writeInt(-1);
+                text(name);
+                names.put(name, names.size());
+            }
+        }
+
+        private void string(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                out.writeInt(-1);
+                text(value);
+                strings.put(value, strings.size());
+            }
+        }
+
+        private void text(String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final long length; // no count can exceed it, so damaged data cannot ask for huge arrays
+        private final List<String> names = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in, long length) {
+            this.in = in;
+            this.length = length;
+        }
+
+        Ast.Program program() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a compiled program");
+            }
+            int intSlots = in.readInt(), doubleSlots = in.readInt(), booleanSlots = in.readInt();
+            int objectSlots = in.readInt(), errors = in.readInt();
+            Ast.Program program = new Ast.Program(statements());
+            program.intSlots = intSlots;
+            program.doubleSlots = doubleSlots;
+            program.booleanSlots = booleanSlots;
+            program.objectSlots = objectSlots;
+            program.errors = errors;
+            if (in.read() != -1) {
+                throw new IOException("Data after the end of the program");
+            }
+            return program;
+        }
+
+        private List<Ast.Stmt> statements() throws IOException {
+            int count = count();
+            List<Ast.Stmt> statements = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Ast.Stmt statement() throws IOException {
+            byte tag = in.readByte();
+            int line = in.readInt();
+            Ast.Stmt stmt = statement(tag);
+            stmt.line = line;
+            return stmt;
+        }
+
+        private Ast.Stmt statement(byte tag) throws IOException {
+            switch (tag) {
+                case FAILED: {
+                    Ast.Stmt failed = new Ast.Block(List.of());
+                    failed.error = text();
+                    return failed;
+                }
+                case BLOCK:
+                    return new Ast.Block(statements());
+                case IF: {
+                    Ast.Expr condition = expression();
+                    Ast.Stmt then = statement();
+                    return new Ast.If(condition, then, in.readBoolean() ? statement() : null);
+                }
+                case WHILE: {
+                    Ast.Expr condition = expression();
+                    return new Ast.While(condition, statement());
+                }
+                case VAR_DECL: {
+                    String type = name(), name = name();
+                    int slot = in.readInt();
+                    Ast.VarDecl decl = new Ast.VarDecl(type, name, expression());
+                    decl.slot = slot;
+                    return decl;
+                }
+                case ASSIGN: {
+                    String name = name();
+                    Ast.Type type = type();
+                    int slot = in.readInt();
+                    Ast.Assign assign = new Ast.Assign(name, expression());
+                    assign.type = type;
+                    assign.slot = slot;
+                    return assign;
+                }
+                case PRINT:
+                    return new Ast.Print(expression());
+                case EXPR_STMT:
+                    return new Ast.ExprStmt(expression());
+                case INVALID:
+                    return new Ast.Invalid(text());
+                case FUNCTION: {
+                    String returnType = name(), name = name();
+                    int count = count();
+                    List<Ast.Parameter> parameters = new ArrayList<>(Math.min(count, 1024));
+                    for (int i = 0; i < count; i++) {
+                        Ast.Parameter parameter = new Ast.Parameter(name(), name());
+                        parameter.slot = in.readInt();
+                        parameters.add(parameter);
+                    }
+                    int intSlots = in.readInt(), doubleSlots = in.readInt(), booleanSlots = in.readInt();
+                    int objectSlots = in.readInt();
+                    Ast.Stmt body = statement();
+                    if (!(body instanceof Ast.Block) || body.error != null) {
+                        throw new IOException("Function " + name + " has no body");
+                    }
+                    Ast.FunctionDecl decl = new Ast.FunctionDecl(returnType, name, parameters, (Ast.Block) body);
+                    decl.intSlots = intSlots;
+                    decl.doubleSlots = doubleSlots;
+                    decl.booleanSlots = booleanSlots;
+                    decl.objectSlots = objectSlots;
+                    return decl;
+                }
+                case RETURN: {
+                    Ast.Type type = type();
+                    Ast.Return ret = new Ast.Return(in.readBoolean() ? expression() : null);
+                    ret.type = type;
+                    return ret;
+                }
+                default:
+                    throw new IOException("Unknown statement tag " + tag);
+            }
+        }
+
+        private Ast.Expr expression() throws IOException {
+            byte tag = in.readByte();
+            Ast.Type type = type();
+            Ast.Expr expr;
+            switch (tag) {
+                case LITERAL:
+                    switch (type) {
+                        case INT: expr = new Ast.Literal(in.readInt()); break;
+                        case DOUBLE: expr = new Ast.Literal(in.readDouble()); break;
+                        case BOOLEAN: expr = new Ast.Literal(in.readBoolean()); break;
+                        default: expr = new Ast.Literal(string().intern()); // as Parser leaves it
+                    }
+                    break;
+                case VARIABLE: {
+                    Ast.Variable variable = new Ast.Variable(name());
+                    variable.slot = in.readInt();
+                    expr = variable;
+                    break;
+                }
+                case UNARY: {
+                    String op = name();
+                    expr = new Ast.Unary(op, expression());
+                    break;
+                }
+                case BINARY: {
+                    String op = name();
+                    Ast.Expr left = expression();
+                    expr = new Ast.Binary(op, left, expression());
+                    break;
+                }
+                case CALL:
+                    expr = call(name(), type);
+                    break;
+                case USER_CALL: {
+                    String name = name();
+                    int count = count();
+                    List<Ast.Expr> args = new ArrayList<>(Math.min(count, 1024));
+                    for (int i = 0; i < count; i++) {
+                        args.add(expression());
+                    }
+                    expr = new Ast.Call(name, args);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown expression tag " + tag);
+            }
+            expr.type = type;
+            return expr;
+        }
+
+        private Ast.Call call(String name, Ast.Type type) throws IOException {
+            int count = count();
+            List<Ast.Expr> args = new ArrayList<>(count);
+            Class<?>[] argumentTypes = new Class<?>[count];
+            for (int i = 0; i < count; i++) {
+                Ast.Expr arg = expression();
+                args.add(arg);
+                argumentTypes[i] = TypeChecker.parameterType(arg.type);
+            }
+            Ast.Call call = new Ast.Call(name, args);
+            call.function = FunctionRegistry.resolve(name, argumentTypes);
+            if (call.function == null || call.function.returnType != type) {
+                throw new IOException("Builtin " + name + " has changed since the program was stored");
+            }
+            return call;
+        }
+
+        private Ast.Type type() throws IOException {
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= TYPES.length) {
+                throw new IOException("Unknown type " + ordinal);
+            }
+            return TYPES[ordinal];
+        }
+
+        private String name() throws IOException {
+            return shared(names);
+        }
+
+        private String string() throws IOException {
+            return shared(strings);
+        }
+
+        private String shared(List<String> table) throws IOException {
+            int index = in.readInt();
+            if (index >= 0) {
+                if (index >= table.size()) throw new IOException("Unknown string " + index);
+                return table.get(index);
+            }
+            String text = text();
+            table.add(text);
+            return text;
+        }
+
+        private String text() throws IOException {
+            byte[] bytes = new byte[count()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int count() throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > length) {
+                throw new IOException("Bad count " + count);
+            }
+            return count;
+        }
+    }
+}
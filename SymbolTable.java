@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+// Interns names seen by the lexer. Lookups hash the characters in place, so a name that is already
+// known costs no allocation, and each symbol carries a category used to classify words in one probe.
+final class SymbolTable {
+    static final byte NAME = 0, KEYWORD = 1, FUNCTION = 2, BOOLEAN = 3;
+
+    private String[] symbols = new String[256];
+    private byte[] categories = new byte[256];
+    private int[] hashes = new int[256];
+    private int count;
+    private int[] table = new int[512]; // symbol id + 1, 0 = empty
+
+    int lookup(char[] chars, int start, int length) {
+        int hash = hash(chars, start, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return add(new String(chars, start, length), NAME, hash, slot);
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(symbols[id], chars, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    int lookup(String name) {
+        return lookup(name.toCharArray(), 0, name.length());
+    }
+
+    void define(String name, byte category) {
+        categories[lookup(name)] = category;
+    }
+
+    // Holds the same symbols with the same ids, without hashing them again
+    SymbolTable copy() {
+        SymbolTable copy = new SymbolTable();
+        copy.symbols = symbols.clone();
+        copy.categories = categories.clone();
+        copy.hashes = hashes.clone();
+        copy.count = count;
+        copy.table = table.clone();
+        return copy;
+    }
+
+    String name(int id) {
+        return symbols[id];
+    }
+
+    byte category(int id) {
+        return categories[id];
+    }
+
+    int size() {
+        return count;
+    }
+
+    private int add(String name, byte category, int hash, int slot) {
+        if (count == symbols.length) {
+            symbols = Arrays.copyOf(symbols, count * 2);
+            categories = Arrays.copyOf(categories, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        int id = count++;
+        symbols[id] = name;
+        categories[id] = category;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] chars, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, char[] chars, int start, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,456 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Assigns a static type to every expression, resolves builtin calls through FunctionRegistry and gives
+// every variable a slot in the Frame array for its type. Each function declared in the program has a
+// frame of its own and sees only its parameters and its own variables. Statements that fail to check
+// keep their error message and report it when they run.
+class TypeChecker {
+    static class TypeException extends RuntimeException {
+        TypeException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Variable {
+        final Ast.Type type;
+        final int slot;
+
+        Variable(Ast.Type type, int slot) {
+            this.type = type;
+            this.slot = slot;
+        }
+    }
+
+    private static final class Signature {
+        final Ast.FunctionDecl declaration;
+        final Ast.Type returnType;
+        final Ast.Type[] parameters;
+
+        Signature(Ast.FunctionDecl declaration, Ast.Type returnType, Ast.Type[] parameters) {
+            this.declaration = declaration;
+            this.returnType = returnType;
+            this.parameters = parameters;
+        }
+    }
+
+    private Map<String, Variable> variables = new HashMap<>();
+    private int intSlots, doubleSlots, booleanSlots, objectSlots;
+    private int errors;
+    // Functions declared without errors, by name; calls bind to these before builtins
+    private final Map<String, Signature> functions = new HashMap<>();
+    private Ast.FunctionDecl enclosing; // function whose body is being checked, null at the top level
+    private int depth; // of the statement being checked, 1 at the top level
+
+    // Returns the number of statements with errors, counting those the parser rejected
+    int check(Ast.Program program) {
+        variables.clear();
+        intSlots = doubleSlots = booleanSlots = objectSlots = 0;
+        errors = 0;
+        // Functions can be called above their declaration, so their signatures come first
+        functions.clear();
+        for (Ast.Stmt stmt : program.statements) {
+            if (stmt instanceof Ast.FunctionDecl) {
+                declare((Ast.FunctionDecl) stmt);
+            }
+        }
+        for (Ast.Stmt stmt : program.statements) {
+            checkRecovering(stmt);
+        }
+        program.intSlots = intSlots;
+        program.doubleSlots = doubleSlots;
+        program.booleanSlots = booleanSlots;
+        program.objectSlots = objectSlots;
+        return errors;
+    }
+
+    // A function whose declaration has an error is left out; checkFunction reports the error
+    private void declare(Ast.FunctionDecl decl) {
+        try {
+            functions.putIfAbsent(decl.name, signature(decl));
+        } catch (TypeException e) {
+            // Reported when the declaration itself is checked
+        }
+    }
+
+    private static Signature signature(Ast.FunctionDecl decl) {
+        Ast.Type[] parameters = new Ast.Type[decl.parameters.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            Ast.Parameter parameter = decl.parameters.get(i);
+            parameters[i] = declaredType(parameter.type);
+            for (int j = 0; j < i; j++) {
+                if (decl.parameters.get(j).name.equals(parameter.name)) {
+                    throw new TypeException("Parameter " + parameter.name + " is already defined");
+                }
+            }
+        }
+        Ast.Type returnType = returnType(decl);
+        if (returnType != Ast.Type.VOID && completesNormally(decl.body)) {
+            throw new TypeException("Missing return statement");
+        }
+        return new Signature(decl, returnType, parameters);
+    }
+
+    static Ast.Type returnType(Ast.FunctionDecl decl) {
+        return decl.returnType.equals("void") ? Ast.Type.VOID : declaredType(decl.returnType);
+    }
+
+    // Whether running the statement can reach its end, as in Java: a return cannot, and neither can
+    // a while (true) loop, since there is no break
+    private static boolean completesNormally(Ast.Stmt stmt) {
+        if (stmt instanceof Ast.Return) return false;
+        if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                if (!completesNormally(inner)) return false;
+            }
+            return true;
+        }
+        if (stmt instanceof Ast.If) {
+            Ast.If branch = (Ast.If) stmt;
+            return branch.otherwise == null || completesNormally(branch.then) || completesNormally(branch.otherwise);
+        }
+        if (stmt instanceof Ast.While) {
+            Ast.Expr condition = ((Ast.While) stmt).condition;
+            return !(condition instanceof Ast.Literal && Boolean.TRUE.equals(((Ast.Literal) condition).value));
+        }
+        return true;
+    }
+
+    private void checkRecovering(Ast.Stmt stmt) {
+        stmt.error = null;
+        depth++;
+        try {
+            checkStatement(stmt);
+        } catch (TypeException e) {
+            stmt.error = e.getMessage();
+            errors++;
+        } finally {
+            depth--;
+        }
+    }
+
+    // The body gets a frame of its own in which only the parameters exist at first
+    private void checkFunction(Ast.FunctionDecl decl) {
+        if (depth > 1) {
+            throw new TypeException("Functions can only be declared at the top level");
+        }
+        Signature signature = signature(decl);
+        if (functions.get(decl.name).declaration != decl) {
+            throw new TypeException("Function " + decl.name + " is already defined");
+        }
+        Map<String, Variable> outer = variables;
+        int outerInts = intSlots, outerDoubles = doubleSlots, outerBooleans = booleanSlots, outerObjects = objectSlots;
+        variables = new HashMap<>();
+        intSlots = doubleSlots = booleanSlots = objectSlots = 0;
+        enclosing = decl;
+        try {
+            for (int i = 0; i < decl.parameters.size(); i++) {
+                Ast.Parameter parameter = decl.parameters.get(i);
+                parameter.slot = nextSlot(signature.parameters[i]);
+                variables.put(parameter.name, new Variable(signature.parameters[i], parameter.slot));
+            }
+            checkRecovering(decl.body);
+            decl.intSlots = intSlots;
+            decl.doubleSlots = doubleSlots;
+            decl.booleanSlots = booleanSlots;
+            decl.objectSlots = objectSlots;
+        } finally {
+            variables = outer;
+            intSlots = outerInts;
+            doubleSlots = outerDoubles;
+            booleanSlots = outerBooleans;
+            objectSlots = outerObjects;
+            enclosing = null;
+        }
+    }
+
+    private void checkStatement(Ast.Stmt stmt) {
+        if (stmt instanceof Ast.FunctionDecl) {
+            checkFunction((Ast.FunctionDecl) stmt);
+        } else if (stmt instanceof Ast.Return) {
+            Ast.Return ret = (Ast.Return) stmt;
+            if (enclosing == null) {
+                throw new TypeException("Return outside of a function");
+            }
+            ret.type = returnType(enclosing);
+            if (ret.value == null) {
+                if (ret.type != Ast.Type.VOID) throw new TypeException("Missing return value");
+            } else if (ret.type == Ast.Type.VOID) {
+                throw new TypeException("Cannot return a value from a void function");
+            } else {
+                checkAssignable(ret.type, checkExpression(ret.value));
+            }
+        } else if (stmt instanceof Ast.Block) {
+            for (Ast.Stmt inner : ((Ast.Block) stmt).statements) {
+                checkRecovering(inner);
+            }
+        } else if (stmt instanceof Ast.If) {
+            // Branches are checked even when the condition is wrong so their declarations still exist
+            Ast.If branch = (Ast.If) stmt;
+            TypeException error = checkCondition(branch.condition);
+            checkRecovering(branch.then);
+            if (branch.otherwise != null) {
+                checkRecovering(branch.otherwise);
+            }
+            if (error != null) throw error;
+        } else if (stmt instanceof Ast.While) {
+            Ast.While loop = (Ast.While) stmt;
+            TypeException error = checkCondition(loop.condition);
+            checkRecovering(loop.body);
+            if (error != null) throw error;
+        } else if (stmt instanceof Ast.VarDecl) {
+            Ast.VarDecl decl = (Ast.VarDecl) stmt;
+            Ast.Type type = declaredType(decl.type);
+            checkAssignable(type, checkExpression(decl.init));
+            Variable variable = variables.get(decl.name);
+            if (variable == null) {
+                variable = new Variable(type, nextSlot(type));
+                variables.put(decl.name, variable);
+            } else if (variable.type != type) {
+                throw new TypeException("Variable " + decl.name + " is already defined as " + describe(variable.type));
+            }
+            decl.slot = variable.slot;
+        } else if (stmt instanceof Ast.Assign) {
+            Ast.Assign assign = (Ast.Assign) stmt;
+            Variable variable = lookup(assign.name);
+            Ast.Type value = checkExpression(assign.value);
+            if (!(assign.compound && isNumeric(variable.type) && isNumeric(value))) {
+                checkAssignable(variable.type, value);
+            }
+            assign.type = variable.type;
+            assign.slot = variable.slot;
+        } else if (stmt instanceof Ast.Print) {
+            if (checkExpression(((Ast.Print) stmt).value) == Ast.Type.VOID) {
+                throw new TypeException("Cannot print a void value");
+            }
+        } else if (stmt instanceof Ast.ExprStmt) {
+            checkExpression(((Ast.ExprStmt) stmt).expr);
+        } else if (stmt instanceof Ast.Invalid) {
+            errors++;
+        }
+    }
+
+    private TypeException checkCondition(Ast.Expr condition) {
+        try {
+            checkAssignable(Ast.Type.BOOLEAN, checkExpression(condition));
+            return null;
+        } catch (TypeException e) {
+            return e;
+        }
+    }
+
+    private Variable lookup(String name) {
+        Variable variable = variables.get(name);
+        if (variable == null) {
+            throw new TypeException("Undefined variable → " + name);
+        }
+        return variable;
+    }
+
+    private int nextSlot(Ast.Type type) {
+        switch (type) {
+            case INT: return intSlots++;
+            case DOUBLE: return doubleSlots++;
+            case BOOLEAN: return booleanSlots++;
+            default: return objectSlots++;
+        }
+    }
+
+    private Ast.Type checkExpression(Ast.Expr expr) {
+        expr.type = computeType(expr);
+        return expr.type;
+    }
+
+    private Ast.Type computeType(Ast.Expr expr) {
+        if (expr instanceof Ast.Literal) {
+            Object value = ((Ast.Literal) expr).value;
+            if (value instanceof Integer) return Ast.Type.INT;
+            if (value instanceof Double) return Ast.Type.DOUBLE;
+            if (value instanceof Boolean) return Ast.Type.BOOLEAN;
+            return Ast.Type.STRING;
+        }
+        if (expr instanceof Ast.Variable) {
+            Ast.Variable reference = (Ast.Variable) expr;
+            Variable variable = lookup(reference.name);
+            reference.slot = variable.slot;
+            return variable.type;
+        }
+        if (expr instanceof Ast.Unary) {
+            Ast.Unary unary = (Ast.Unary) expr;
+            Ast.Type operand = checkExpression(unary.operand);
+            if (unary.op.equals("!")) {
+                requireBoolean(operand, "!");
+                return Ast.Type.BOOLEAN;
+            }
+            requireNumeric(operand, "-");
+            return operand;
+        }
+        if (expr instanceof Ast.Binary) {
+            Ast.Binary binary = (Ast.Binary) expr;
+            Ast.Type left = checkExpression(binary.left);
+            Ast.Type right = checkExpression(binary.right);
+            switch (binary.op) {
+                case "&&": case "||":
+                    requireBoolean(left, binary.op);
+                    requireBoolean(right, binary.op);
+                    return Ast.Type.BOOLEAN;
+                case "<": case ">": case "<=": case ">=":
+                    requireNumeric(left, binary.op);
+                    requireNumeric(right, binary.op);
+                    return Ast.Type.BOOLEAN;
+                case "==": case "!=":
+                    if (comparisonType(left, right) == null) {
+                        throw new TypeException("Incomparable types: " + describe(left) + " and " + describe(right));
+                    }
+                    return Ast.Type.BOOLEAN;
+                default:
+                    break;
+            }
+            if (binary.op.equals("+") && (left == Ast.Type.STRING || right == Ast.Type.STRING)) {
+                if (left == Ast.Type.VOID || right == Ast.Type.VOID) {
+                    throw new TypeException("Cannot concatenate a void value");
+                }
+                return Ast.Type.STRING;
+            }
+            requireNumeric(left, binary.op);
+            requireNumeric(right, binary.op);
+            return arithmeticType(left, right);
+        }
+        if (expr instanceof Ast.Call) {
+            return checkCall((Ast.Call) expr);
+        }
+        throw new IllegalStateException("Unknown expression " + expr);
+    }
+
+    private Ast.Type checkCall(Ast.Call call) {
+        Class<?>[] argumentTypes = new Class<?>[call.args.size()];
+        for (int i = 0; i < argumentTypes.length; i++) {
+            argumentTypes[i] = parameterType(checkExpression(call.args.get(i)));
+        }
+        Signature signature = functions.get(call.name);
+        if (signature != null) {
+            // A function declared in the program hides any builtin of the same name
+            boolean applicable = signature.parameters.length == argumentTypes.length;
+            for (int i = 0; applicable && i < argumentTypes.length; i++) {
+                applicable = isAssignable(signature.parameters[i], call.args.get(i).type);
+            }
+            if (!applicable) {
+                throw new TypeException("Function '" + call.name + "' with these parameter types not found");
+            }
+            call.function = null;
+            return signature.returnType;
+        }
+        FunctionRegistry.Function function;
+        try {
+            function = FunctionRegistry.resolve(call.name, argumentTypes);
+        } catch (FunctionRegistry.AmbiguousCallException e) {
+            throw new TypeException(e.getMessage());
+        }
+        if (function == null) {
+            throw new TypeException("Function '" + call.name + "' with these parameter types not found");
+        }
+        call.function = function;
+        return function.returnType;
+    }
+
+    static Class<?> parameterType(Ast.Type type) {
+        switch (type) {
+            case INT: return int.class;
+            case LONG: return long.class;
+            case DOUBLE: return double.class;
+            case BOOLEAN: return boolean.class;
+            case CHAR: return char.class;
+            case STRING: return String.class;
+            case OBJECT: return Object.class;
+            case INT_ARRAY: return int[].class;
+            case DOUBLE_ARRAY: return double[].class;
+            default: throw new TypeException("Invalid argument of type " + describe(type));
+        }
+    }
+
+    static Ast.Type typeOf(Class<?> javaType) {
+        if (javaType == int.class) return Ast.Type.INT;
+        if (javaType == long.class) return Ast.Type.LONG;
+        if (javaType == double.class) return Ast.Type.DOUBLE;
+        if (javaType == boolean.class) return Ast.Type.BOOLEAN;
+        if (javaType == char.class) return Ast.Type.CHAR;
+        if (javaType == String.class) return Ast.Type.STRING;
+        if (javaType == int[].class) return Ast.Type.INT_ARRAY;
+        if (javaType == double[].class) return Ast.Type.DOUBLE_ARRAY;
+        if (javaType == void.class) return Ast.Type.VOID;
+        return Ast.Type.OBJECT;
+    }
+
+    static Ast.Type declaredType(String type) {
+        switch (type) {
+            case "int": return Ast.Type.INT;
+            case "double": return Ast.Type.DOUBLE;
+            case "boolean": return Ast.Type.BOOLEAN;
+            case "String": return Ast.Type.STRING;
+            case "int[]": return Ast.Type.INT_ARRAY;
+            case "double[]": return Ast.Type.DOUBLE_ARRAY;
+            default: throw new TypeException("Unsupported type " + type);
+        }
+    }
+
+    private static void checkAssignable(Ast.Type target, Ast.Type value) {
+        if (isNumeric(target) && isNumeric(value) && !isAssignable(target, value)) {
+            throw new TypeException("Cannot assign " + describe(value) + " to " + describe(target));
+        }
+        if (!isAssignable(target, value)) {
+            throw new TypeException("Incompatible types: " + describe(value) + " cannot be converted to " + describe(target));
+        }
+    }
+
+    private static boolean isAssignable(Ast.Type target, Ast.Type value) {
+        // Widening only, as in Java
+        return value == target || target == Ast.Type.DOUBLE && isNumeric(value);
+    }
+
+    // Binary numeric promotion: double if either side is double, else long if either is long, else int
+    static Ast.Type arithmeticType(Ast.Type left, Ast.Type right) {
+        if (left == Ast.Type.DOUBLE || right == Ast.Type.DOUBLE) return Ast.Type.DOUBLE;
+        return left == Ast.Type.LONG || right == Ast.Type.LONG ? Ast.Type.LONG : Ast.Type.INT;
+    }
+
+    // The type both sides of a comparison are converted to, or null if they cannot be compared
+    static Ast.Type comparisonType(Ast.Type left, Ast.Type right) {
+        if (isNumeric(left) && isNumeric(right)) return arithmeticType(left, right);
+        if (left == Ast.Type.BOOLEAN && right == Ast.Type.BOOLEAN) return Ast.Type.BOOLEAN;
+        // Arrays are only compared with arrays of their own type, by identity as in Java
+        if (isArray(left) || isArray(right)) return left == right ? Ast.Type.OBJECT : null;
+        boolean leftReference = left == Ast.Type.STRING || left == Ast.Type.OBJECT;
+        boolean rightReference = right == Ast.Type.STRING || right == Ast.Type.OBJECT;
+        return leftReference && rightReference ? Ast.Type.OBJECT : null;
+    }
+
+    private static void requireBoolean(Ast.Type type, String op) {
+        if (type != Ast.Type.BOOLEAN) {
+            throw new TypeException("Bad operand type " + describe(type) + " for " + op);
+        }
+    }
+
+    private static void requireNumeric(Ast.Type type, String op) {
+        if (!isNumeric(type)) {
+            throw new TypeException("Bad operand type " + describe(type) + " for " + op);
+        }
+    }
+
+    static String describe(Ast.Type type) {
+        switch (type) {
+            case STRING: return "String";
+            case OBJECT: return "Object";
+            case INT_ARRAY: return "int[]";
+            case DOUBLE_ARRAY: return "double[]";
+            default: return type.name().toLowerCase();
+        }
+    }
+
+    static boolean isArray(Ast.Type type) {
+        return type == Ast.Type.INT_ARRAY || type == Ast.Type.DOUBLE_ARRAY;
+    }
+
+    static boolean isNumeric(Ast.Type type) {
+        return type == Ast.Type.INT || type == Ast.Type.LONG || type == Ast.Type.DOUBLE;
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Front end, interpreter and bytecode backend on each synthetic program shape. execute and runBytecode
+// reuse a program compiled in setup; analyzeAndExecute is the full path taken by the UI. compileCached
+// is a repeat compilation answered by the program cache, which costs hashing the source.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompilerBenchmark {
+    @Param({"DECLARATIONS", "ARITHMETIC", "CALLS", "LOOP", "CONCAT", "FUNCTIONS"})
+    public Programs shape;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private String code;
+    private Object compiler;
+    private Object cachingCompiler;
+    private Object program;
+    private Object script;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        code = shape.generate(size);
+        compiler = Subject.newCompiler();
+        cachingCompiler = Subject.newCompiler(1);
+        Subject.compile(cachingCompiler, code);
+        program = Subject.compile(compiler, code);
+        script = Subject.compileToBytecode(compiler, program);
+        String interpreted = Subject.execute(compiler, program);
+        if (!interpreted.equals(Subject.run(script))) {
+            throw new IllegalStateException("Backends disagree on " + shape + "/" + size);
+        }
+    }
+
+    @Benchmark
+    public Object compile() {
+        return Subject.compile(compiler, code);
+    }
+
+    @Benchmark
+    public Object compileCached() {
+        return Subject.compile(cachingCompiler, code);
+    }
+
+    @Benchmark
+    public String execute() {
+        return Subject.execute(compiler, program);
+    }
+
+    @Benchmark
+    public String runBytecode() {
+        return Subject.run(script);
+    }
+
+    @Benchmark
+    public String analyzeAndExecute() {
+        return Subject.analyzeAndExecute(compiler, code);
+    }
+}
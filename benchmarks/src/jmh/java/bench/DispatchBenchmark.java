@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Builtin dispatch through FunctionRegistry: the memoised overload lookup done by the type checker and
+// the MethodHandle call made at each evaluation, with a plain addition as the floor
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    private Object add;
+    private Object sqrt;
+    private Object concat;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        add = Subject.resolve("add", int.class, int.class);
+        sqrt = Subject.resolve("sqrt", int.class);
+        concat = Subject.resolve("concat", String.class, String.class);
+    }
+
+    @Benchmark
+    public Object resolve() {
+        return Subject.resolve("max", int.class, int.class);
+    }
+
+    @Benchmark
+    public Object invokeAdd() {
+        return Subject.invoke(add, new Object[] {counter++, 2});
+    }
+
+    @Benchmark
+    public Object invokeSqrt() {
+        return Subject.invoke(sqrt, new Object[] {counter++});
+    }
+
+    @Benchmark
+    public Object invokeConcat() {
+        return Subject.invoke(concat, new Object[] {"a", "b"});
+    }
+
+    @Benchmark
+    public int baselineAdd() {
+        return Math.addExact(counter++, 2);
+    }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// One keystroke in the middle of a large program: typing a character and deleting it again, analyzed
+// incrementally, against compiling the whole text again as the Run button used to
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EditorBenchmark {
+    @Param({"DECLARATIONS", "CALLS"})
+    public Programs shape;
+
+    @Param({"1000", "30000"})
+    public int size;
+
+    private StringBuilder text;
+    private Object analysis;
+    private Object compiler;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = new StringBuilder(shape.generate(size));
+        analysis = Subject.newAnalysis(text);
+        compiler = Subject.newCompiler();
+        offset = text.indexOf("\n", text.length() / 2);
+    }
+
+    @Benchmark
+    public void keystroke() {
+        text.insert(offset, ' ');
+        Subject.update(analysis, text, offset, 0, 1);
+        text.deleteCharAt(offset);
+        Subject.update(analysis, text, offset, 1, 0);
+    }
+
+    @Benchmark
+    public Object fullReparse() {
+        return Subject.compile(compiler, text.toString());
+    }
+}
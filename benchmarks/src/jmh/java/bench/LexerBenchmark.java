@@ -0,0 +1,60 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Lexing a generated program held in memory (token list and compact TokenBuffer) and on disk
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LexerBenchmark {
+    @Param({"DECLARATIONS", "ARITHMETIC", "CALLS"})
+    public Programs shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private String code;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        code = shape.generate(size);
+        file = Files.createTempFile("lexer-benchmark", ".java");
+        Files.write(file, code.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Object analyze() {
+        return Subject.analyze(code);
+    }
+
+    @Benchmark
+    public Object tokenize() {
+        return Subject.tokenize(code);
+    }
+
+    @Benchmark
+    public int streamFile() throws IOException {
+        return Subject.countTokens(file);
+    }
+}
@@ -0,0 +1,93 @@
+package bench;
+
+// Synthetic source programs for the benchmarks. Each shape stresses one part of the pipeline and
+// scales with size (statements, or loop iterations for LOOP, CONCAT and FUNCTIONS).
+enum Programs {
+    // Many independent declarations: lexer, parser and slot allocation
+    DECLARATIONS {
+        String generate(int size) {
+            StringBuilder code = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                switch (i % 3) {
+                    case 0: code.append("int v").append(i).append(" = ").append(i).append(";\n"); break;
+                    case 1: code.append("double v").append(i).append(" = ").append(i).append(".5;\n"); break;
+                    default: code.append("String v").append(i).append(" = \"s").append(i).append("\";\n");
+                }
+            }
+            return code.append("print(v0);\n").toString();
+        }
+    },
+    // Deeply nested arithmetic over a few variables: expression evaluation
+    ARITHMETIC {
+        String generate(int size) {
+            StringBuilder code = new StringBuilder("int a = 3;\nint b = 7;\ndouble c = 1.5;\n");
+            for (int i = 0; i < size; i++) {
+                code.append("a = ");
+                for (int depth = 0; depth < 16; depth++) code.append('(');
+                code.append("a");
+                for (int depth = 0; depth < 16; depth++) {
+                    code.append(depth % 2 == 0 ? " + b) * 3" : " - a) / 2");
+                }
+                code.append(";\n");
+                code.append("c = c * 1.0001 + a / 7.0 - b;\n");
+            }
+            return code.append("print(a);\nprint(c);\n").toString();
+        }
+    },
+    // Builtin calls with nested arguments: function dispatch
+    CALLS {
+        String generate(int size) {
+            StringBuilder code = new StringBuilder("int n = 0;\nString s = \"abc\";\n");
+            for (int i = 0; i < size; i++) {
+                code.append("n = add(max(n, ").append(i).append("), multiply(2, min(n, 5)));\n");
+                code.append("s = toLowerCase(concat(toUpperCase(s), \"x\"));\n");
+                code.append("double r").append(i % 8).append(" = sqrt(power(2, 10)) + absoluteValue(-1.5);\n");
+            }
+            return code.append("print(n);\nprint(len(s));\n").toString();
+        }
+    },
+    // A single while loop running size iterations: instruction dispatch
+    LOOP {
+        String generate(int size) {
+            return "int i = 0;\nint sum = 0;\ndouble avg = 0.0;\n"
+                    + "while (i < " + size + ") {\n"
+                    + "    sum = sum + i * 2 - i / 3;\n"
+                    + "    if (sum > 1000000) { sum = sum - 1000000; } else avg = avg + 0.5;\n"
+                    + "    i++;\n"
+                    + "}\n"
+                    + "print(sum);\nprint(avg);\n";
+        }
+    },
+    // A string built up over size iterations and searched as it grows: in-place string appends
+    CONCAT {
+        String generate(int size) {
+            return "int i = 0;\nString s = \"\";\nint found = 0;\n"
+                    + "while (i < " + size + ") {\n"
+                    + "    s = s + \"item \" + i + \", \";\n"
+                    + "    if (modulus(len(s), 7) == 0) { found = found + 1; }\n"
+                    + "    i++;\n"
+                    + "}\n"
+                    + "print(len(s));\nprint(found);\nprint(contains(s, \"item 7,\"));\n";
+        }
+    },
+    // Calls to small and recursive user functions in a loop: call frames and inlining
+    FUNCTIONS {
+        String generate(int size) {
+            return "int square(int x) { return x * x; }\n"
+                    + "double hyp(double a, double b) { return sqrt(a * a + b * b); }\n"
+                    + "int fib(int n) {\n"
+                    + "    if (n < 2) return n;\n"
+                    + "    return fib(n - 1) + fib(n - 2);\n"
+                    + "}\n"
+                    + "int i = 0;\nint sum = 0;\ndouble total = 0.0;\n"
+                    + "while (i < " + size + ") {\n"
+                    + "    sum = sum + square(modulus(i, 100)) - fib(modulus(i, 8));\n"
+                    + "    total = total + hyp(i, 1.5);\n"
+                    + "    i++;\n"
+                    + "}\n"
+                    + "print(sum);\nprint(total);\n";
+        }
+    };
+
+    abstract String generate(int size);
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// A batch of runs of one shared compiled program on the ExecutionService; comparing the threads
+// values shows how throughput scales with cores
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ServiceBenchmark {
+    private static final int BATCH = 64;
+
+    @Param({"ARITHMETIC", "LOOP"})
+    public Programs shape;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Object service;
+    private Object program;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Object compiler = Subject.newCompiler();
+        program = Subject.compile(compiler, shape.generate(1000));
+        service = Subject.newService(compiler, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Subject.close(service);
+    }
+
+    @Benchmark
+    public Object batch() {
+        CompletableFuture<?>[] runs = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            runs[i] = Subject.submit(service, "run", program);
+        }
+        return CompletableFuture.allOf(runs).join();
+    }
+}
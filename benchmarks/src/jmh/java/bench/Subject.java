@@ -0,0 +1,226 @@
+package bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Entry points of the compiler under test. Its classes live in the default package, which a named
+// package cannot import, so they are bound once through method handles and called with invokeExact.
+final class Subject {
+    private static final MethodHandle ANALYZE = method("LexicalAnalyzer", "analyze", String.class);
+    private static final MethodHandle TOKENIZE = method("LexicalAnalyzer", "tokenize", CharSequence.class);
+    private static final MethodHandle STREAM_FILE = method("LexicalAnalyzer", "stream", Path.class);
+    private static final MethodHandle NEW_COMPILER = constructor("JavaSubsetCompiler");
+    private static final MethodHandle SET_CACHE = method("JavaSubsetCompiler", "setCache", type("ProgramCache"));
+    private static final MethodHandle NEW_CACHE = constructor("ProgramCache", int.class);
+    private static final MethodHandle COMPILE = method("JavaSubsetCompiler", "compile", String.class);
+    private static final MethodHandle EXECUTE = method("JavaSubsetCompiler", "execute", type("Ast$Program"));
+    private static final MethodHandle ANALYZE_AND_EXECUTE = method("JavaSubsetCompiler", "analyzeAndExecute", String.class);
+    private static final MethodHandle COMPILE_TO_BYTECODE = method("JavaSubsetCompiler", "compileToBytecode", type("Ast$Program"));
+    private static final MethodHandle RUN = method("BytecodeCompiler$Script", "run");
+    private static final MethodHandle RESOLVE = method("FunctionRegistry", "resolve", String.class, Class[].class);
+    private static final MethodHandle INVOKE = method("FunctionRegistry$Function", "invoke", Object[].class);
+    private static final MethodHandle NEW_SERVICE = constructor("ExecutionService", type("JavaSubsetCompiler"), int.class);
+    private static final MethodHandle SUBMIT = method("ExecutionService", "submit", String.class, type("Ast$Program"));
+    private static final MethodHandle CLOSE = method("ExecutionService", "close");
+    private static final MethodHandle NEW_ANALYSIS = constructor("IncrementalAnalysis");
+    private static final MethodHandle RESET = method("IncrementalAnalysis", "reset", CharSequence.class);
+    private static final MethodHandle UPDATE = method("IncrementalAnalysis", "update", CharSequence.class, int.class, int.class, int.class);
+
+    private Subject() {}
+
+    static List<?> analyze(String code) {
+        try {
+            return (List<?>) (Object) ANALYZE.invokeExact((Object) code);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object tokenize(CharSequence code) {
+        try {
+            return (Object) TOKENIZE.invokeExact((Object) code);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Lexes a file through the memory-mapped token stream and returns the number of tokens
+    static int countTokens(Path file) throws IOException {
+        Object stream;
+        try {
+            stream = (Object) STREAM_FILE.invokeExact((Object) file);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+        try (Closeable closeable = (Closeable) stream) {
+            Iterator<?> tokens = (Iterator<?>) closeable;
+            int count = 0;
+            while (tokens.hasNext()) {
+                tokens.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // Compiles every source afresh, so benchmarks measure the compiler rather than the program cache
+    static Object newCompiler() {
+        return newCompiler(0);
+    }
+
+    // A compiler that keeps up to cacheCapacity compiled programs, or none for 0
+    static Object newCompiler(int cacheCapacity) {
+        try {
+            Object compiler = (Object) NEW_COMPILER.invokeExact();
+            Object cache = cacheCapacity > 0 ? (Object) NEW_CACHE.invokeExact((Object) cacheCapacity) : null;
+            Object ignored = (Object) SET_CACHE.invokeExact(compiler, cache);
+            return compiler;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object compile(Object compiler, String code) {
+        try {
+            return (Object) COMPILE.invokeExact(compiler, (Object) code);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String execute(Object compiler, Object program) {
+        try {
+            return (String) (Object) EXECUTE.invokeExact(compiler, program);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String analyzeAndExecute(Object compiler, String code) {
+        try {
+            return (String) (Object) ANALYZE_AND_EXECUTE.invokeExact(compiler, (Object) code);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object compileToBytecode(Object compiler, Object program) {
+        try {
+            return (Object) COMPILE_TO_BYTECODE.invokeExact(compiler, program);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String run(Object script) {
+        try {
+            return (String) (Object) RUN.invokeExact(script);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object resolve(String name, Class<?>... argumentTypes) {
+        try {
+            return (Object) RESOLVE.invokeExact((Object) name, (Object) argumentTypes);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object invoke(Object function, Object[] args) {
+        try {
+            return (Object) INVOKE.invokeExact(function, (Object) args);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newService(Object compiler, int threads) {
+        try {
+            return (Object) NEW_SERVICE.invokeExact(compiler, (Object) threads);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static CompletableFuture<?> submit(Object service, String name, Object program) {
+        try {
+            return (CompletableFuture<?>) (Object) SUBMIT.invokeExact(service, (Object) name, program);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void close(Object service) {
+        try {
+            Object ignored = (Object) CLOSE.invokeExact(service);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newAnalysis(CharSequence text) {
+        try {
+            Object analysis = (Object) NEW_ANALYSIS.invokeExact();
+            Object ignored = (Object) RESET.invokeExact(analysis, (Object) text);
+            return analysis;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void update(Object analysis, CharSequence text, int offset, int removed, int inserted) {
+        try {
+            Object ignored = (Object) UPDATE.invokeExact(analysis, (Object) text, (Object) offset, (Object) removed, (Object) inserted);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Compiler class " + name + " not on the classpath", e);
+        }
+    }
+
+    // Handles are adapted to all-Object signatures so every call site can use invokeExact
+    private static MethodHandle method(String owner, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type(owner).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            return handle.asType(MethodType.genericMethodType(handle.type().parameterCount()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot bind " + owner + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(String owner, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type(owner).getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.genericMethodType(parameterTypes.length));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot bind " + owner + "()", e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) return (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        return new RuntimeException(e);
+    }
+}
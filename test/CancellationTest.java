@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+// Stops programs that never end the way the UI's Stop button does, by throwing from the monitor, and
+// checks that both backends give the exception back to their caller instead of reporting it as the
+// error of some statement and carrying on. Also stops a directory scan by interrupting its caller.
+// `gradle check` runs this.
+final class CancellationTest {
+    private static final int CHECKPOINTS = 1000;
+
+    private static final String[] PROGRAMS = {
+        "print(\"started\");\nint i = 0;\nwhile (true) {\n    i++;\n}\nprint(\"finished\");\n",
+        // Loops and recursion inside functions, called from statements that catch runtime errors
+        "void spin() {\n    while (true) {}\n}\nprint(\"started\");\nspin();\nprint(\"finished\");\n",
+        "int spin(int n) {\n    int i = 0;\n    while (i >= 0) i = (i + 1) % 10;\n    return i;\n}\n"
+                + "print(\"started\");\nprint(spin(3) + 1);\nprint(\"finished\");\n",
+        "int down(int n) {\n    if (n == 0) return 0;\n    return down(n - 1);\n}\nprint(\"started\");\n"
+                + "while (true) print(down(50));\nprint(\"finished\");\n",
+    };
+
+    public static void main(String[] args) throws IOException {
+        List<String> failures = new ArrayList<>();
+        for (String source : PROGRAMS) {
+            for (boolean optimize : new boolean[] {false, true}) {
+                for (boolean bytecode : new boolean[] {false, true}) {
+                    String failure = stop(source, optimize, bytecode);
+                    if (failure != null) {
+                        failures.add(source + "--- " + (optimize ? "optimized " : "") + (bytecode ? "bytecode" : "interpreted")
+                                + ": " + failure + "\n");
+                    }
+                }
+            }
+        }
+        String failure = stopScan();
+        if (failure != null) {
+            failures.add("directory scan: " + failure + "\n");
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.size() + " runs not stopped:\n\n" + String.join("\n", failures));
+        }
+        System.out.println(PROGRAMS.length + " programs stopped");
+    }
+
+    // Returns what went wrong, or null when the program stopped at the monitor's request
+    private static String stop(String source, boolean optimize, boolean bytecode) {
+        Ast.Program program = new Parser(LexicalAnalyzer.analyze(source)).parseProgram();
+        program.errors = new TypeChecker().check(program);
+        if (program.errors > 0) {
+            return "does not compile";
+        }
+        if (optimize) {
+            program = Optimizer.optimize(program);
+        }
+        StringBuilder output = new StringBuilder();
+        int[] checkpoints = {0};
+        ExecutionMonitor monitor = out -> {
+            if (++checkpoints[0] == CHECKPOINTS) {
+                throw new CancellationException("Stopped");
+            }
+        };
+        try {
+            if (bytecode) {
+                BytecodeCompiler.compile(program).run(output, monitor);
+            } else {
+                new Interpreter().execute(program, output, monitor);
+            }
+            return "ran to the end, printing\n" + output;
+        } catch (CancellationException e) {
+            if (checkpoints[0] != CHECKPOINTS) {
+                return "went on to checkpoint " + checkpoints[0];
+            }
+            if (!output.toString().startsWith("started\n") || output.indexOf("Error") >= 0 || output.indexOf("finished") >= 0) {
+                return "printed\n" + output;
+            }
+            return null;
+        }
+    }
+
+    private static String stopScan() throws IOException {
+        Path root = Files.createTempDirectory("scan");
+        try {
+            Files.createDirectories(root.resolve("a/b"));
+            Files.writeString(root.resolve("a/b/c.txt"), "c");
+            Thread.currentThread().interrupt();
+            try {
+                DirectoryWalk.scan(root, "");
+                return "not stopped";
+            } catch (CancellationException e) {
+                return Thread.interrupted() ? null : "lost the interrupt";
+            }
+        } finally {
+            Thread.interrupted();
+            Files.delete(root.resolve("a/b/c.txt"));
+            Files.delete(root.resolve("a/b"));
+            Files.delete(root.resolve("a"));
+            Files.delete(root);
+        }
+    }
+}
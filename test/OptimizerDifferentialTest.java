@@ -0,0 +1,168 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs every program here as written and as the Optimizer rewrites it, each on the interpreter and as
+// bytecode, plus the optimized program after a round trip through ProgramFormat as the disk cache
+// stores it. Fails unless all five runs print the same thing and, where one is given, what Java would
+// print. String == is covered on purpose: the bytecode backend loads literals as interned constants,
+// so folding a string expression into a literal would change what it compares equal to. Programs the
+// type checker must reject are checked for their message. `gradle check` runs this.
+final class OptimizerDifferentialTest {
+    private static final String[] PROGRAMS = {
+        // Strings built at run time are new objects; equal literals are one object
+        "String a = \"x\" + \"y\";\nprint(a == \"xy\");\nprint(toUpperCase(\"q\") == \"Q\");\n"
+                + "print(concat(\"a\", \"b\") == \"ab\");\nprint(reverseString(\"ba\") != \"ab\");\n",
+        "String c = \"abc\";\nString d = \"abc\";\nprint(c == d);\nprint(c == \"abc\");\nprint(c != \"abd\");\n"
+                + "String e = c + \"\";\nprint(e == c);\nprint(equals(e, c));\n",
+        "String s = \"\";\nint i = 0;\nwhile (i < 3) {\n    s = s + \"n\" + i;\n    i++;\n}\nprint(s);\n"
+                + "print(len(s));\nprint(s == \"n0n1n2\");\n",
+        // A string appended to in place is not seen changing through a copy taken earlier
+        "String s = \"a\";\nString t = s;\ns = s + \"b\";\nString u = s;\ns = s + \"c\" + 1;\nprint(t);\nprint(u);\n"
+                + "print(s);\nprint(charAt(s, 2));\nprint(contains(s, \"bc\"));\nprint(replace(s, \"b\", \"B\"));\n"
+                + "print(len(u));\nu = u + u;\nprint(u);\nprint(s == u);\n",
+        // Arithmetic, conversions and comparisons
+        "int a = 7;\nint b = a * 3 + 2 % 5 - 9 / 2;\ndouble x = 1.0 / 0;\nprint(b);\nprint(x);\n"
+                + "print(0.0 / 0 == 0.0 / 0);\nprint(-7 % 3);\nprint(5.5 % 2);\nprint(1 + 2 + \"3\" + 4 + 5);\n"
+                + "print(3 < 2.5 || 1 == 1.0 && !false);\n",
+        // Failures stay where they were written
+        "int z = 0;\nprint(\"before\");\nprint(1 / z);\nprint(5 % 0);\nprint(divide(1, 0));\nprint(\"after\");\n",
+        // Pure builtins with constant arguments
+        "print(add(2, 3));\nprint(len(\"hello\"));\nprint(sqrt(16));\nprint(max(3, 9));\n"
+                + "print(power(2, 10));\nprint(contains(\"abc\", \"b\"));\nprint(toUpperCase(\"mixed\"));\n",
+        // Constant variables and dead code
+        "boolean debug = false;\nint n = 10;\nif (debug) print(\"no\"); else print(\"yes\");\n"
+                + "while (false) print(1);\nint i = 0;\nint sum = 0;\nwhile (i < n) {\n    sum = sum + i;\n    i++;\n}\n"
+                + "print(sum);\nint unused = 4;\nunused = 5;\nprint(n * 2);\n",
+        // Functions, including ones small enough to inline
+        "int square(int x) { return x * x; }\nString twice(String s) { return s + s; }\n"
+                + "double half(int x) { return x / 2.0; }\nprint(square(4));\nprint(square(2 + 1));\n"
+                + "print(twice(\"ab\") == \"abab\");\nString t = twice(\"ab\");\nprint(t == t);\nprint(half(square(3)));\n"
+                + "int fib(int n) {\n    if (n < 2) return n;\n    return fib(n - 1) + fib(n - 2);\n}\nprint(fib(15));\n",
+        // Arrays, which are shared by reference like Java's
+        "int[] r = range(5);\nint[] same = r;\nset(same, 0, 10);\nprint(get(r, 0));\nprint(sum(r));\n"
+                + "print(toString(multiply(r, 2)));\ndouble[] xs = toDoubles(r);\nprint(mean(xs));\nprint(dot(xs, xs));\n"
+                + "int[] c = copy(r);\nset(c, 1, 0);\nprint(get(r, 1));\nprint(r == same);\nprint(r == c);\n"
+                + "print(toString(sqrt(fill(3, 16.0))));\nprint(get(r, 9));\nprint(len(r));\n",
+    };
+
+    // Programs whose output is fixed by Java's semantics, so a bug both backends share is caught too
+    private static final String[][] EXPECTED = {
+        // long arithmetic stays long, as in Java (fileLength of a missing file is 0)
+        {"long is long", "print(fileLength(\"missing file\") + 1);\n"
+                + "print((fileLength(\"missing file\") + 1000000) * 1000000);\n"
+                + "print(-(fileLength(\"missing file\") + 3) / 2 % 5);\ndouble d = fileLength(\"missing file\") + 2;\n"
+                + "print(d);\nprint(\"n=\" + (fileLength(\"missing file\") + 7));\n",
+                "1\n1000000000000\n-1\n2.0\nn=7\n"},
+        // Compound assignments narrow to the variable's type, as in Java
+        {"compound", "int x = 17;\nx %= 5;\nprint(x);\nx += 2.5;\nprint(x);\nx *= 1.9;\nprint(x);\n"
+                + "double y = 7.5;\ny %= 2;\nprint(y);\ny -= 1;\nprint(y);\n",
+                "2\n4\n7\n1.5\n0.5\n"},
+        // The mean of large ints does not wrap around
+        {"mean", "print(mean(fill(2, 2147483647)));\nprint(sum(fill(2, 2147483647)));\nprint(mean(range(4)));\n",
+                "2.147483647E9\n-2\n1.5\n"},
+    };
+
+    // Programs the type checker rejects, with the message of their first error
+    private static final String[][] REJECTED = {
+        {"int z = 2.5;\n", "Cannot assign double to int"},
+        {"int z = fileLength(\"missing file\");\n", "Cannot assign long to int"},
+        {"int f(int x) { return x; }\nprint(f(1.5));\n", "Function 'f' with these parameter types not found"},
+        {"int f() { return 0.5; }\n", "Cannot assign double to int"},
+        {"int x = 1;\nx = x / 2.0;\n", "Cannot assign double to int"},
+    };
+
+    public static void main(String[] args) {
+        List<String> failures = new ArrayList<>();
+        for (String source : PROGRAMS) {
+            compare(source, null, failures);
+        }
+        for (String[] program : EXPECTED) {
+            compare(program[1], program[2], failures);
+        }
+        for (String[] program : REJECTED) {
+            String error = firstError(program[0]);
+            if (!program[1].equals(error)) {
+                failures.add(program[0] + "--- expected error: " + program[1] + "\n--- got: " + error + "\n");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.size() + " runs differ:\n\n" + String.join("\n", failures));
+        }
+        System.out.println((PROGRAMS.length + EXPECTED.length) + " programs agree, " + REJECTED.length + " rejected");
+    }
+
+    private static void compare(String source, String java, List<String> failures) {
+        Ast.Program written;
+        Ast.Program optimized;
+        try {
+            written = check(source);
+            optimized = Optimizer.optimize(check(source));
+        } catch (AssertionError e) {
+            failures.add(e.getMessage());
+            return;
+        }
+        String expected = run(written, false);
+        String[] actual = {run(written, true), run(optimized, false), run(optimized, true), run(reload(optimized), false)};
+        String[] names = {"bytecode", "optimized", "optimized bytecode", "optimized and reloaded"};
+        for (int i = 0; i < actual.length; i++) {
+            if (!actual[i].equals(expected)) {
+                failures.add(source + "--- interpreted:\n" + expected + "--- " + names[i] + ":\n" + actual[i]);
+            }
+        }
+        if (java != null && !expected.equals(java)) {
+            failures.add(source + "--- expected:\n" + java + "--- interpreted:\n" + expected);
+        }
+    }
+
+    private static Ast.Program check(String source) {
+        Ast.Program program = new Parser(LexicalAnalyzer.analyze(source)).parseProgram();
+        program.errors = new TypeChecker().check(program);
+        if (program.errors > 0) {
+            throw new AssertionError("Does not compile:\n" + source);
+        }
+        return program;
+    }
+
+    private static String firstError(String source) {
+        Ast.Program program = new Parser(LexicalAnalyzer.analyze(source)).parseProgram();
+        new TypeChecker().check(program);
+        for (Ast.Stmt stmt : program.statements) {
+            if (stmt.error != null) return stmt.error;
+            if (stmt instanceof Ast.FunctionDecl) {
+                for (Ast.Stmt inner : ((Ast.FunctionDecl) stmt).body.statements) {
+                    if (inner.error != null) return inner.error;
+                }
+            }
+        }
+        return null;
+    }
+
+    // The program as the disk cache gives it back
+    private static Ast.Program reload(Ast.Program program) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                ProgramFormat.write(program, out);
+            }
+            return ProgramFormat.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), bytes.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String run(Ast.Program program, boolean bytecode) {
+        StringBuilder output = new StringBuilder();
+        if (bytecode) {
+            BytecodeCompiler.compile(program).run(output, null);
+        } else {
+            new Interpreter().execute(program, output, null);
+        }
+        return output.toString();
+    }
+}